@@ -0,0 +1,134 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.vaadin.teemusa.undertow.UidlSession;
+
+/**
+ * Minimal blocking client speaking the Vaadin client-server protocol. A client
+ * represents one browser tab: it bootstraps a UI and sends button clicks to
+ * it as UIDL requests.
+ */
+class BenchmarkClient {
+
+    private final String baseURL;
+    private String sessionCookie;
+    private UidlSession session;
+
+    /**
+     * Creates a new client.
+     * 
+     * @param baseURL
+     *            the base URL of the deployment, ending with a slash
+     */
+    BenchmarkClient(String baseURL) {
+        this.baseURL = baseURL;
+    }
+
+    /**
+     * Loads the bootstrap page and initializes the UI like a browser would.
+     * 
+     * @throws IOException
+     *             if a request fails
+     */
+    void bootstrap() throws IOException {
+        read(open(baseURL));
+        session = UidlSession.init(post(
+                open(baseURL + UidlSession.getInitPath()),
+                "application/x-www-form-urlencoded",
+                UidlSession.getInitRequest(baseURL)));
+    }
+
+    /**
+     * Clicks the button of the UI and waits for the response.
+     * 
+     * @throws IOException
+     *             if the request fails
+     */
+    void click() throws IOException {
+        session.update(post(open(baseURL + session.getUidlPath()),
+                "application/json; charset=UTF-8", session.createClick()));
+    }
+
+    /**
+     * Gets the protocol state of the bootstrapped UI.
+     * 
+     * @return the UIDL session, or {@code null} before bootstrapping
+     */
+    UidlSession getSession() {
+        return session;
+    }
+
+    /**
+     * Gets the session cookie set by the server.
+     * 
+     * @return the cookie as sent in the {@code Cookie} header, or
+     *         {@code null} before bootstrapping
+     */
+    String getSessionCookie() {
+        return sessionCookie;
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url)
+                .openConnection();
+        connection.setInstanceFollowRedirects(false);
+        if (sessionCookie != null) {
+            connection.setRequestProperty("Cookie", sessionCookie);
+        }
+        return connection;
+    }
+
+    private String post(HttpURLConnection connection, String contentType,
+            String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setFixedLengthStreamingMode(bytes.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(bytes);
+        }
+        return read(connection);
+    }
+
+    private String read(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected response status " + status
+                    + " from " + connection.getURL());
+        }
+        String cookie = connection.getHeaderField("Set-Cookie");
+        if (cookie != null) {
+            sessionCookie = cookie.split(";", 2)[0];
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return new String(readFully(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the given stream to the end.
+     * 
+     * @param in
+     *            the stream to read
+     * @return the bytes read
+     * @throws IOException
+     *             if reading fails
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
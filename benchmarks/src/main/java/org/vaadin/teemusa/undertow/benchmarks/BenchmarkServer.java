@@ -0,0 +1,72 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.ui.UI;
+
+/**
+ * Server started and stopped by the benchmarks. Opens up the lifecycle that
+ * {@link UndertowServer} leaves to subclasses, like applications embedding
+ * the launcher would.
+ */
+class BenchmarkServer extends UndertowServer {
+
+    private BenchmarkServer(ServerConfiguration configuration) {
+        setConfiguration(configuration);
+    }
+
+    /**
+     * Creates a server for the given servlet on any free port.
+     * 
+     * @param servletClass
+     *            the servlet to deploy
+     * @param configuration
+     *            the server configuration
+     * @return the server, not started
+     */
+    static BenchmarkServer forServlet(
+            Class<? extends VaadinServlet> servletClass,
+            ServerConfiguration configuration) {
+        BenchmarkServer server = new BenchmarkServer(configuration);
+        server.initServlet(servletClass);
+        return server;
+    }
+
+    /**
+     * Creates a server for the given UI on any free port.
+     * 
+     * @param uiClass
+     *            the UI to deploy
+     * @param configuration
+     *            the server configuration
+     * @return the server, not started
+     */
+    static BenchmarkServer forUI(Class<? extends UI> uiClass,
+            ServerConfiguration configuration) {
+        BenchmarkServer server = new BenchmarkServer(configuration);
+        server.initUI(uiClass);
+        return server;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+    }
+
+    /**
+     * Gets the loopback URL of the started server. The benchmarks do not use
+     * {@link #getBaseURL()} to keep the network out of the measurements.
+     * 
+     * @return the base URL on the loopback interface, ending with a slash
+     */
+    String getLocalURL() {
+        return "http://localhost:" + getPort() + "/";
+    }
+}
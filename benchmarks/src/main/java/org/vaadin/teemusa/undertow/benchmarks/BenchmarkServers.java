@@ -0,0 +1,72 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+
+/**
+ * Helper for starting the servers used by the benchmarks.
+ */
+class BenchmarkServers {
+
+    /**
+     * Configuration using the Undertow defaults.
+     */
+    static final String DEFAULT = "default";
+
+    /**
+     * Configuration with the static resource cache, compression and
+     * {@code TCP_NODELAY} enabled.
+     */
+    static final String TUNED = "tuned";
+
+    /**
+     * Configuration passivating sessions off-heap after one second of
+     * inactivity.
+     */
+    static final String OFF_HEAP_SESSIONS = "offheap-sessions";
+
+    private BenchmarkServers() {
+    }
+
+    /**
+     * Creates a server for {@link BenchmarkUI} on any free port.
+     * 
+     * @param configuration
+     *            the name of the configuration, {@link #DEFAULT},
+     *            {@link #TUNED} or {@link #OFF_HEAP_SESSIONS}
+     * @return the server, not started
+     */
+    static BenchmarkServer create(String configuration) {
+        return BenchmarkServer.forServlet(BenchmarkUI.Servlet.class,
+                getConfiguration(configuration));
+    }
+
+    /**
+     * Creates and starts a server for {@link BenchmarkUI} on any free port.
+     * 
+     * @param configuration
+     *            the name of the configuration, {@link #DEFAULT},
+     *            {@link #TUNED} or {@link #OFF_HEAP_SESSIONS}
+     * @return the started server
+     */
+    static BenchmarkServer start(String configuration) {
+        BenchmarkServer server = create(configuration);
+        server.start();
+        return server;
+    }
+
+    private static ServerConfiguration getConfiguration(String name) {
+        switch (name) {
+        case DEFAULT:
+            return new ServerConfiguration();
+        case TUNED:
+            return new ServerConfiguration().setTcpNoDelay(true)
+                    .setStaticResourceCaching(true).setCompression(true);
+        case OFF_HEAP_SESSIONS:
+            return new ServerConfiguration().setOffHeapSessions(true)
+                    .setSessionPassivationTime(1);
+        default:
+            throw new IllegalArgumentException(
+                    "Unknown configuration: " + name);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import javax.servlet.annotation.WebServlet;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.server.VaadinServlet;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * UI used by the benchmarks. Same as the demo UI of the tests: a button and a
+ * label counting the clicks.
+ */
+public class BenchmarkUI extends UI {
+
+    private int clickCounter = 0;
+
+    @Override
+    protected void init(VaadinRequest request) {
+        VerticalLayout layout = new VerticalLayout();
+        Label counter = new Label("" + clickCounter);
+        counter.setId("counter");
+        layout.addComponents(
+                new Button("Click me",
+                        e -> counter.setValue("" + (++clickCounter))),
+                new Label("Click Counter:"), counter);
+
+        setContent(layout);
+    }
+
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = BenchmarkUI.class)
+    public static class Servlet extends VaadinServlet {
+    }
+}
@@ -0,0 +1,49 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for the time to first byte of the bootstrap page. Every request
+ * creates a new Vaadin session, like the first visit of a user.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class BootstrapBenchmark {
+
+    /**
+     * Measures the time until the first byte of the bootstrap page has been
+     * received.
+     * 
+     * @param state
+     *            the server
+     * @return the first byte of the response
+     * @throws IOException
+     *             if the request fails
+     */
+    @Benchmark
+    public int timeToFirstByte(ServerState state) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                state.getBaseURL()).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            int first = in.read();
+            // Drain the response so that the connection can be reused
+            BenchmarkClient.readFully(in);
+            return first;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemusa.undertow.SelfSignedCertificate;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+/**
+ * Benchmark for the TLS handshake rate of the HTTPS listener. Every
+ * invocation opens a new connection and completes the handshake. With
+ * resumption the client offers the session of an earlier connection, and
+ * without it the session is invalidated so that every handshake is a full
+ * one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+@Threads(4)
+public class HandshakeBenchmark {
+
+    @Param({ "on", "off" })
+    public String resumption;
+
+    private BenchmarkServer server;
+    private SSLSocketFactory socketFactory;
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        server = BenchmarkServer.forServlet(BenchmarkUI.Servlet.class,
+                new ServerConfiguration().setHttpsPort(UndertowServer.ANY_PORT)
+                        .setSslSessionCacheSize(10000)
+                        .setSslSessionTimeout(3600));
+        server.start();
+        socketFactory = SelfSignedCertificate.getClientSslContext()
+                .getSocketFactory();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Measures connecting and completing the TLS handshake.
+     * 
+     * @return the negotiated protocol
+     * @throws IOException
+     *             if the handshake fails
+     */
+    @Benchmark
+    public String handshake() throws IOException {
+        try (SSLSocket socket = (SSLSocket) socketFactory
+                .createSocket("localhost", server.getSecurePort())) {
+            socket.startHandshake();
+            if ("off".equals(resumption)) {
+                // Not offered again by later connections
+                socket.getSession().invalidate();
+            }
+            return socket.getSession().getProtocol();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemusa.undertow.SelfSignedCertificate;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowServer;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.ssl.XnioSsl;
+
+import io.undertow.UndertowOptions;
+import io.undertow.client.ClientCallback;
+import io.undertow.client.ClientConnection;
+import io.undertow.client.ClientExchange;
+import io.undertow.client.ClientRequest;
+import io.undertow.client.UndertowClient;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.protocols.ssl.UndertowXnioSsl;
+import io.undertow.server.DefaultByteBufferPool;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import io.undertow.util.Protocols;
+import io.undertow.util.StatusCodes;
+import io.undertow.util.StringReadChannelListener;
+
+/**
+ * Benchmark for the latency of a page load over HTTP/1.1 and HTTP/2. A page
+ * load is a first visit: it connects, loads the bootstrap page and then
+ * requests the resources that the page loads before the widgetset starts,
+ * all at once. Over HTTP/1.1 each resource gets a connection of its own, as
+ * browsers open several connections per host, while over HTTP/2 they are
+ * multiplexed on the connection of the page.
+ * <p>
+ * {@code h2c} upgrades a plain connection to HTTP/2, and {@code h2}
+ * negotiates it through ALPN on a TLS connection. The benchmark fails to set
+ * up rather than measure HTTP/1.1 if the Java runtime cannot negotiate
+ * {@code h2}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class PageLoadBenchmark {
+
+    private static final Pattern RESOURCE = Pattern
+            .compile("\"\\./(VAADIN/[^\"]+)\"");
+    private static final Pattern THEME = Pattern
+            .compile("\"theme\": ?\"([^\"]+)\"");
+    private static final Pattern WIDGETSET = Pattern
+            .compile("\"widgetset\": ?\"([^\"]+)\"");
+
+    @Param({ "http1.1", "h2c", "h2" })
+    public String protocol;
+
+    private BenchmarkServer server;
+    private XnioWorker worker;
+    private ByteBufferPool bufferPool;
+    private XnioSsl ssl;
+    private URI uri;
+    private OptionMap options = OptionMap.EMPTY;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        server = BenchmarkServer.forServlet(BenchmarkUI.Servlet.class,
+                new ServerConfiguration().setHttp2(true)
+                        .setHttpsPort(UndertowServer.ANY_PORT)
+                        .setTcpNoDelay(true));
+        server.start();
+        worker = Xnio.getInstance(PageLoadBenchmark.class.getClassLoader())
+                .createWorker(OptionMap.builder()
+                        .set(Options.WORKER_IO_THREADS, 2)
+                        .set(Options.TCP_NODELAY, true)
+                        .set(Options.THREAD_DAEMON, true).getMap());
+        bufferPool = new DefaultByteBufferPool(true, 16 * 1024);
+        ssl = new UndertowXnioSsl(worker.getXnio(), OptionMap.EMPTY,
+                SelfSignedCertificate.getClientSslContext());
+        switch (protocol) {
+        case "h2c":
+            uri = URI.create("h2c://localhost:" + server.getPort() + "/");
+            break;
+        case "h2":
+            uri = URI.create(
+                    "https://localhost:" + server.getSecurePort() + "/");
+            options = OptionMap.create(UndertowOptions.ENABLE_HTTP2, true);
+            break;
+        default:
+            uri = URI.create(server.getLocalURL());
+        }
+
+        ClientConnection connection = connect().get();
+        try {
+            HttpString negotiated = send(connection, "").get().protocol;
+            HttpString expected = "http1.1".equals(protocol)
+                    ? Protocols.HTTP_1_1 : Protocols.HTTP_2_0;
+            if (!expected.equals(negotiated)) {
+                throw new IllegalStateException(
+                        "Expected " + expected + " but got " + negotiated);
+            }
+        } finally {
+            IoUtils.safeClose(connection);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        worker.shutdown();
+        bufferPool.close();
+        server.stop();
+    }
+
+    /**
+     * Measures loading the bootstrap page and its resources on new
+     * connections.
+     * 
+     * @return the number of characters received
+     * @throws Exception
+     *             if a request fails
+     */
+    @Benchmark
+    public int pageLoad() throws Exception {
+        ClientConnection connection = connect().get();
+        try {
+            String page = send(connection, "").get().body;
+            List<CompletableFuture<Response>> resources = new ArrayList<>();
+            for (String resource : getResources(page)) {
+                if ("http1.1".equals(protocol)) {
+                    resources.add(connect().thenCompose(c -> send(c, resource)
+                            .whenComplete((r, e) -> IoUtils.safeClose(c))));
+                } else {
+                    resources.add(send(connection, resource));
+                }
+            }
+            int length = page.length();
+            for (CompletableFuture<Response> resource : resources) {
+                length += resource.get().body.length();
+            }
+            return length;
+        } finally {
+            IoUtils.safeClose(connection);
+        }
+    }
+
+    /**
+     * Gets the resources a browser requests for a bootstrap page before the
+     * widgetset starts: the resources linked from the page, and the theme
+     * and widgetset loaded by the bootstrap script.
+     */
+    private static Set<String> getResources(String page) {
+        Set<String> resources = new LinkedHashSet<>();
+        Matcher resource = RESOURCE.matcher(page);
+        while (resource.find()) {
+            resources.add(resource.group(1));
+        }
+        Matcher theme = THEME.matcher(page);
+        if (theme.find()) {
+            resources.add("VAADIN/themes/" + theme.group(1) + "/styles.css");
+        }
+        Matcher widgetset = WIDGETSET.matcher(page);
+        if (widgetset.find()) {
+            String name = widgetset.group(1);
+            resources.add("VAADIN/widgetsets/" + name + "/" + name
+                    + ".nocache.js");
+        }
+        return resources;
+    }
+
+    private CompletableFuture<ClientConnection> connect() {
+        CompletableFuture<ClientConnection> future;
+        future = new CompletableFuture<>();
+        UndertowClient.getInstance()
+                .connect(new ClientCallback<ClientConnection>() {
+                    @Override
+                    public void completed(ClientConnection result) {
+                        future.complete(result);
+                    }
+
+                    @Override
+                    public void failed(IOException e) {
+                        future.completeExceptionally(e);
+                    }
+                }, uri, worker, ssl, bufferPool, options);
+        return future;
+    }
+
+    private CompletableFuture<Response> send(ClientConnection connection,
+            String path) {
+        ClientRequest request = new ClientRequest().setMethod(Methods.GET)
+                .setPath(uri.getRawPath() + path);
+        request.getRequestHeaders().put(Headers.HOST, uri.getAuthority());
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        connection.sendRequest(request,
+                new ClientCallback<ClientExchange>() {
+                    @Override
+                    public void completed(ClientExchange exchange) {
+                        exchange.setResponseListener(
+                                new ClientCallback<ClientExchange>() {
+                                    @Override
+                                    public void completed(
+                                            ClientExchange result) {
+                                        read(result, path, response);
+                                    }
+
+                                    @Override
+                                    public void failed(IOException e) {
+                                        response.completeExceptionally(e);
+                                    }
+                                });
+                    }
+
+                    @Override
+                    public void failed(IOException e) {
+                        response.completeExceptionally(e);
+                    }
+                });
+        return response;
+    }
+
+    private void read(ClientExchange exchange, String path,
+            CompletableFuture<Response> response) {
+        int status = exchange.getResponse().getResponseCode();
+        HttpString version = exchange.getResponse().getProtocol();
+        new StringReadChannelListener(bufferPool) {
+            @Override
+            protected void stringDone(String string) {
+                if (status == StatusCodes.OK) {
+                    response.complete(new Response(version, string));
+                } else {
+                    response.completeExceptionally(new IOException(
+                            "Unexpected response status " + status
+                                    + " for " + path));
+                }
+            }
+
+            @Override
+            protected void error(IOException e) {
+                response.completeExceptionally(e);
+            }
+        }.setup(exchange.getResponseChannel());
+    }
+
+    /**
+     * Response of a request with its body read as a string.
+     */
+    private static class Response {
+        private final HttpString protocol;
+        private final String body;
+
+        private Response(HttpString protocol, String body) {
+            this.protocol = protocol;
+            this.body = body;
+        }
+    }
+}
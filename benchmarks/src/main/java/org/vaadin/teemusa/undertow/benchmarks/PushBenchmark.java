@@ -0,0 +1,132 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+
+/**
+ * Benchmark for server push of {@link PushUI} over a WebSocket and with long
+ * polling. Each benchmark thread is one user with its own session and push
+ * connection. The updates are made from the benchmark thread, like a
+ * background task of the application would make them, and an invocation
+ * completes when the client has received the last of them.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+@Threads(4)
+public class PushBenchmark {
+
+    private static final int BURST = 100;
+
+    /**
+     * State with a started server shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({ PushClient.WEBSOCKET, PushClient.LONG_POLLING })
+        public String transport;
+
+        private BenchmarkServer server;
+
+        @Setup(Level.Trial)
+        public void startServer() {
+            server = BenchmarkServer.forUI(PushUI.class,
+                    new ServerConfiguration());
+            server.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stopServer() {
+            server.stop();
+        }
+    }
+
+    /**
+     * State with a bootstrapped UI and its push connection for each
+     * benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private PushUI ui;
+        private PushClient push;
+        private int sequence;
+
+        @Setup(Level.Trial)
+        public void connect(Server server) throws IOException {
+            String baseURL = server.server.getLocalURL();
+            BenchmarkClient client = new BenchmarkClient(baseURL);
+            client.bootstrap();
+            ui = PushUI.find(client.getSession().getPushId());
+            push = new PushClient(baseURL, client);
+            push.connect(server.transport);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            push.close();
+        }
+
+        private String push() {
+            String value = "push-" + sequence++;
+            ui.push(value);
+            return value;
+        }
+    }
+
+    /**
+     * Measures the time from a change of the UI until the client has
+     * received it.
+     * 
+     * @param connection
+     *            the push connection of the current thread
+     * @throws IOException
+     *             if the change is not received
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency(Connection connection) throws IOException {
+        connection.push.await(connection.push());
+    }
+
+    /**
+     * Measures the rate of changes received when they are made back to back.
+     * Long polling delivers the changes made while no request is pending in
+     * one response.
+     * 
+     * @param connection
+     *            the push connection of the current thread
+     * @throws IOException
+     *             if the changes are not received
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public void throughput(Connection connection) throws IOException {
+        String last = null;
+        for (int i = 0; i < BURST; i++) {
+            last = connection.push();
+        }
+        connection.push.await(last);
+    }
+}
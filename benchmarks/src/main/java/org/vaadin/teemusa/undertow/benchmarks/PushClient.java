@@ -0,0 +1,219 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+
+/**
+ * Minimal client receiving the push messages of a UI bootstrapped by a
+ * {@link BenchmarkClient}, either over a WebSocket or with long polling like
+ * the Vaadin client does. The messages are not parsed: callers wait for a
+ * value to appear in what has been received.
+ */
+class PushClient implements Closeable {
+
+    /**
+     * Transport keeping a WebSocket open for the messages.
+     */
+    static final String WEBSOCKET = "websocket";
+
+    /**
+     * Transport with a pending request the server completes when it has
+     * messages, after which the client sends the next one.
+     */
+    static final String LONG_POLLING = "long-polling";
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    // Tracking id, heartbeat interval and padding sent when connecting
+    private static final Pattern HANDSHAKE = Pattern
+            .compile("([0-9a-f-]{36})\\|-?\\d+\\|");
+
+    private final String baseURL;
+    private final BenchmarkClient client;
+    private final StringBuilder received = new StringBuilder();
+    private Session webSocket;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new push client.
+     * 
+     * @param baseURL
+     *            the base URL of the deployment, ending with a slash
+     * @param client
+     *            the client that has bootstrapped the UI
+     */
+    PushClient(String baseURL, BenchmarkClient client) {
+        this.baseURL = baseURL;
+        this.client = client;
+    }
+
+    /**
+     * Opens the push connection and waits for the handshake.
+     * 
+     * @param transport
+     *            {@link #WEBSOCKET} or {@link #LONG_POLLING}
+     * @throws IOException
+     *             if connecting fails
+     */
+    void connect(String transport) throws IOException {
+        if (WEBSOCKET.equals(transport)) {
+            openWebSocket();
+            awaitHandshake();
+        } else if (LONG_POLLING.equals(transport)) {
+            receive(poll("0"));
+            startPolling(awaitHandshake());
+        } else {
+            throw new IllegalArgumentException(
+                    "Unknown transport: " + transport);
+        }
+    }
+
+    /**
+     * Waits until the given value has been pushed, and discards everything
+     * received up to it.
+     * 
+     * @param value
+     *            the pushed value of a component state
+     * @throws IOException
+     *             if the value is not received within ten seconds
+     */
+    void await(String value) throws IOException {
+        // Quoted like string values in the JSON of the messages
+        String quoted = '"' + value + '"';
+        long deadline = System.nanoTime() + TIMEOUT;
+        synchronized (received) {
+            int index;
+            while ((index = received.indexOf(quoted)) < 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException("Did not receive " + quoted);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(received, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for " + quoted);
+                }
+            }
+            received.delete(0, index + quoted.length());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (webSocket != null) {
+            webSocket.close();
+        }
+    }
+
+    private void openWebSocket() throws IOException {
+        URI uri = URI.create("ws" + baseURL.substring("http".length())
+                + client.getSession().getPushPath(WEBSOCKET, "0"));
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create()
+                .configurator(new ClientEndpointConfig.Configurator() {
+                    @Override
+                    public void beforeRequest(
+                            Map<String, List<String>> headers) {
+                        headers.put("Cookie", Collections
+                                .singletonList(client.getSessionCookie()));
+                    }
+                }).build();
+        try {
+            webSocket = ContainerProvider.getWebSocketContainer()
+                    .connectToServer(new Endpoint() {
+                        @Override
+                        public void onOpen(Session session,
+                                EndpointConfig config) {
+                            // Not a lambda, the container needs the type
+                            session.addMessageHandler(
+                                    new MessageHandler.Whole<String>() {
+                                        @Override
+                                        public void onMessage(String message) {
+                                            receive(message);
+                                        }
+                                    });
+                        }
+                    }, config, uri);
+        } catch (DeploymentException e) {
+            throw new IOException("Could not connect to " + uri, e);
+        }
+    }
+
+    private void startPolling(String trackingId) {
+        Thread poller = new Thread(() -> {
+            while (!closed) {
+                try {
+                    receive(poll(trackingId));
+                } catch (IOException e) {
+                    // The server has been stopped
+                    return;
+                }
+            }
+        }, "long-polling");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    private String poll(String trackingId) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseURL
+                + client.getSession().getPushPath(LONG_POLLING, trackingId))
+                        .openConnection();
+        connection.setRequestProperty("Cookie", client.getSessionCookie());
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected response status " + status
+                    + " from " + connection.getURL());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return new String(BenchmarkClient.readFully(in),
+                    StandardCharsets.UTF_8);
+        }
+    }
+
+    private void receive(String message) {
+        synchronized (received) {
+            received.append(message);
+            received.notifyAll();
+        }
+    }
+
+    private String awaitHandshake() throws IOException {
+        long deadline = System.nanoTime() + TIMEOUT;
+        synchronized (received) {
+            Matcher handshake;
+            while (!(handshake = HANDSHAKE.matcher(received)).find()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new IOException("No push handshake: " + received);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(received, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for handshake");
+                }
+            }
+            received.delete(0, handshake.end());
+            return handshake.group(1);
+        }
+    }
+}
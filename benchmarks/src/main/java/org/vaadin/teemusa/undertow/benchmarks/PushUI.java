@@ -0,0 +1,72 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import com.vaadin.annotations.Push;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+/**
+ * UI used by the push benchmarks. Changes to its label are pushed to the
+ * client as soon as they are made. The benchmarks run in the same JVM as the
+ * server and look the UI up by the push id of its session to make the
+ * changes.
+ */
+@Push
+public class PushUI extends UI {
+
+    private static final Map<String, PushUI> UIS = new ConcurrentHashMap<>();
+
+    private final Label pushed = new Label();
+    private String pushId;
+
+    @Override
+    protected void init(VaadinRequest request) {
+        pushed.setId("pushed");
+        // The benchmark client expects a button to click
+        setContent(new VerticalLayout(
+                new Button("Clear", e -> pushed.setValue("")), pushed));
+        pushId = getSession().getPushId();
+        UIS.put(pushId, this);
+    }
+
+    @Override
+    public void detach() {
+        UIS.remove(pushId);
+        super.detach();
+    }
+
+    /**
+     * Sets the value of the label from outside of a request. The change is
+     * pushed to the client once the session lock is released.
+     * 
+     * @param value
+     *            the new value of the label
+     * @return future completed once the value has been set
+     */
+    Future<Void> push(String value) {
+        return access(() -> pushed.setValue(value));
+    }
+
+    /**
+     * Finds the UI of the session with the given push id.
+     * 
+     * @param pushId
+     *            the push id received by the client
+     * @return the UI
+     * @throws IllegalStateException
+     *             if there is no such UI
+     */
+    static PushUI find(String pushId) {
+        PushUI ui = UIS.get(pushId);
+        if (ui == null) {
+            throw new IllegalStateException("No UI with push id " + pushId);
+        }
+        return ui;
+    }
+}
@@ -0,0 +1,41 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark state with a started server shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class ServerState {
+
+    @Param({ BenchmarkServers.DEFAULT, BenchmarkServers.TUNED })
+    public String configuration;
+
+    private BenchmarkServer server;
+    private String baseURL;
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        server = BenchmarkServers.start(configuration);
+        baseURL = server.getLocalURL();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Gets the loopback URL of the server.
+     * 
+     * @return the base URL, ending with a slash
+     */
+    String getBaseURL() {
+        return baseURL;
+    }
+}
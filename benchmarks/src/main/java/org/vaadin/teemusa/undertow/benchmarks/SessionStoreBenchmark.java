@@ -0,0 +1,101 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemusa.undertow.LoadDriver;
+import org.vaadin.teemusa.undertow.LoadReport;
+
+/**
+ * Benchmark comparing the heap size and full GC pause with sessions kept on
+ * the heap and passivated off-heap. The sessions are created with
+ * {@link LoadDriver} and left idle before measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 2, jvmArgs = { "-Xms2g", "-Xmx2g" })
+public class SessionStoreBenchmark {
+
+    @Param({ BenchmarkServers.DEFAULT, BenchmarkServers.OFF_HEAP_SESSIONS })
+    public String configuration;
+
+    @Param({ "5000" })
+    public int sessions;
+
+    private BenchmarkServer server;
+
+    /**
+     * Heap usage after the collection, reported next to the pause time.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HeapUsage {
+        public long heapUsedKilobytes;
+        public long gcTimeMillis;
+    }
+
+    @Setup(Level.Trial)
+    public void createSessions() throws InterruptedException {
+        server = BenchmarkServers.start(configuration);
+        LoadReport report = LoadDriver.create(server).setSessions(sessions)
+                .setConnections(32).run(Duration.ofSeconds(20));
+        if (report.getSessions() < sessions) {
+            throw new IllegalStateException("Only " + report.getSessions()
+                    + " of " + sessions + " sessions were created");
+        }
+
+        // Let the sessions go idle and wait for them to be passivated
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        do {
+            Thread.sleep(1000);
+        } while (server.getSessionStoreStatistics()
+                .map(s -> s.getPassivatedSessions() < s.getSessions())
+                .orElse(false) && System.nanoTime() < deadline);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop();
+    }
+
+    /**
+     * Measures a full garbage collection with the sessions alive.
+     * 
+     * @param usage
+     *            the heap usage counters
+     */
+    @Benchmark
+    public void fullGc(HeapUsage usage) {
+        long gcTime = getTotalGcTime();
+        System.gc();
+        usage.gcTimeMillis = getTotalGcTime() - gcTime;
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        usage.heapUsedKilobytes = memory.getHeapMemoryUsage().getUsed()
+                / 1024;
+    }
+
+    private static long getTotalGcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
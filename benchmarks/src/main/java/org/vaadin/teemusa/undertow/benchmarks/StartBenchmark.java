@@ -0,0 +1,59 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+/**
+ * Benchmark for initializing, deploying and binding a new
+ * {@link UndertowServer}. By default each fork measures a single cold start in
+ * a fresh JVM. Run with {@code -wi <n> -i <n>} to measure starts in a warmed
+ * up JVM instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartBenchmark {
+
+    @Param({ BenchmarkServers.DEFAULT, BenchmarkServers.TUNED })
+    public String configuration;
+
+    private BenchmarkServer server;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        server = BenchmarkServers.create(configuration);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * Measures starting a server that has been created but not started.
+     * 
+     * @return the server
+     */
+    @Benchmark
+    public UndertowServer start() {
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,61 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for serving static resources. Requests the Valo theme, which is
+ * the largest resource loaded by every Vaadin application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+@Threads(4)
+public class StaticResourceBenchmark {
+
+    private static final String RESOURCE = "VAADIN/themes/valo/styles.css";
+
+    @Param({ "identity", "gzip" })
+    public String acceptEncoding;
+
+    /**
+     * Measures downloading the theme.
+     * 
+     * @param state
+     *            the server
+     * @return the number of bytes received
+     * @throws IOException
+     *             if the request fails
+     */
+    @Benchmark
+    public int themeStyles(ServerState state) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                state.getBaseURL() + RESOURCE).openConnection();
+        connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected response status "
+                    + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return BenchmarkClient.readFully(in).length;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+/**
+ * Benchmark for stopping a started {@link UndertowServer}. Each invocation is
+ * measured on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(3)
+public class StopBenchmark {
+
+    @Param({ BenchmarkServers.DEFAULT, BenchmarkServers.TUNED })
+    public String configuration;
+
+    private BenchmarkServer server;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        server = BenchmarkServers.start(configuration);
+    }
+
+    /**
+     * Measures stopping a started server.
+     * 
+     * @return the server
+     */
+    @Benchmark
+    public UndertowServer stop() {
+        server.stop();
+        return server;
+    }
+}
@@ -0,0 +1,58 @@
+package org.vaadin.teemusa.undertow.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for the throughput of UIDL round-trips. Each benchmark thread is
+ * one user clicking the button of {@link BenchmarkUI} in its own session.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+@Threads(4)
+public class UidlBenchmark {
+
+    /**
+     * State with a bootstrapped UI for each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Session {
+
+        private BenchmarkClient client;
+
+        @Setup(Level.Trial)
+        public void bootstrap(ServerState state) throws IOException {
+            client = new BenchmarkClient(state.getBaseURL());
+            client.bootstrap();
+        }
+    }
+
+    /**
+     * Measures clicking the button and receiving the changes.
+     * 
+     * @param session
+     *            the session of the current thread
+     * @throws IOException
+     *             if the request fails
+     */
+    @Benchmark
+    public void buttonClick(Session session) throws IOException {
+        session.client.click();
+    }
+}
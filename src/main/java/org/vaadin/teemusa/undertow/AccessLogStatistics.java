@@ -0,0 +1,78 @@
+package org.vaadin.teemusa.undertow;
+
+/**
+ * Snapshot of the statistics of the access log.
+ * 
+ * @see UndertowServer#getAccessLogStatistics()
+ */
+public class AccessLogStatistics {
+
+    private final long writtenEntries;
+    private final long droppedEntries;
+    private final long writeErrors;
+    private final long pendingEntries;
+    private final int bufferSize;
+
+    AccessLogStatistics(long writtenEntries, long droppedEntries,
+            long writeErrors, long pendingEntries, int bufferSize) {
+        this.writtenEntries = writtenEntries;
+        this.droppedEntries = droppedEntries;
+        this.writeErrors = writeErrors;
+        this.pendingEntries = pendingEntries;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Gets the number of entries written to disk.
+     * 
+     * @return the written entry count
+     */
+    public long getWrittenEntries() {
+        return writtenEntries;
+    }
+
+    /**
+     * Gets the number of entries dropped because the buffer was full or
+     * writing them failed.
+     * 
+     * @return the dropped entry count
+     */
+    public long getDroppedEntries() {
+        return droppedEntries;
+    }
+
+    /**
+     * Gets the number of times writing the log failed. The writer opens the
+     * log file again after a failure.
+     * 
+     * @return the write error count
+     */
+    public long getWriteErrors() {
+        return writeErrors;
+    }
+
+    /**
+     * Gets the number of entries waiting in the buffer to be written.
+     * 
+     * @return the pending entry count
+     */
+    public long getPendingEntries() {
+        return pendingEntries;
+    }
+
+    /**
+     * Gets the number of entries the buffer can hold.
+     * 
+     * @return the buffer size
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public String toString() {
+        return "written=" + writtenEntries + " dropped=" + droppedEntries
+                + " errors=" + writeErrors + " pending=" + pendingEntries + "/"
+                + bufferSize;
+    }
+}
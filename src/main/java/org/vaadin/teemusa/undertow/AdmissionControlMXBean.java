@@ -0,0 +1,38 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Map;
+
+/**
+ * JMX interface of the admission control of a server. Values are keyed by the
+ * lower case name of the {@link AdmissionStatistics.Limit}.
+ */
+public interface AdmissionControlMXBean {
+
+    /**
+     * Gets the maximum number of concurrent requests of each limit.
+     * 
+     * @return the concurrency limits
+     */
+    Map<String, Integer> getMaxConcurrentRequests();
+
+    /**
+     * Gets the number of admitted requests currently being processed.
+     * 
+     * @return the active request counts
+     */
+    Map<String, Long> getActiveRequests();
+
+    /**
+     * Gets the number of requests waiting for admission.
+     * 
+     * @return the queue depths
+     */
+    Map<String, Long> getQueuedRequests();
+
+    /**
+     * Gets the number of requests rejected because the queue was full.
+     * 
+     * @return the rejection counts
+     */
+    Map<String, Long> getRejectedRequests();
+}
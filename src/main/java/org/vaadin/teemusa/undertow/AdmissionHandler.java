@@ -0,0 +1,195 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+import org.vaadin.teemusa.undertow.AdmissionStatistics.Limit;
+import org.vaadin.teemusa.undertow.RequestMetrics.RequestType;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.RequestLimit;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Handler limiting the number of concurrently processed requests. Requests
+ * over the limit wait in a bounded queue, and requests that do not fit in the
+ * queue are rejected with {@code 503 Service Unavailable} and a
+ * {@code Retry-After} header instead of adding to the latency of everyone
+ * else.
+ * <p>
+ * Heartbeat and static resource requests are admitted through limits of
+ * their own. They are cheap to serve, and a heartbeat stuck behind a backlog
+ * of UIDL requests could end a session that is still in use. Push requests
+ * are not limited at all. A long polling or WebSocket push connection stays
+ * open for the lifetime of its UI, so limiting it would use up the slots of
+ * other requests. The metrics, health and readiness endpoints are never
+ * limited either, so that an overloaded server can still be monitored.
+ * 
+ * @see ServerConfiguration#setMaxConcurrentRequests(int)
+ */
+class AdmissionHandler implements HttpHandler, AdmissionControlMXBean {
+
+    private final HttpHandler next;
+    private final Set<String> unlimitedPaths = new HashSet<>();
+    private final Lane[] lanes;
+
+    /**
+     * Request limit with counters for one {@link Limit}.
+     */
+    private static class Lane {
+        private final RequestLimit limit;
+        private final HttpHandler admit;
+        private final LongAdder arrived = new LongAdder();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private Lane(HttpHandler next, int maxConcurrentRequests,
+                int maxQueuedRequests, int retryAfter) {
+            limit = new RequestLimit(maxConcurrentRequests, maxQueuedRequests);
+            limit.setFailureHandler(exchange -> {
+                rejected.increment();
+                exchange.getResponseHeaders().put(Headers.RETRY_AFTER,
+                        retryAfter);
+                exchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+                exchange.endExchange();
+            });
+            ExchangeCompletionListener completion = (exchange,
+                    nextListener) -> {
+                completed.increment();
+                nextListener.proceed();
+            };
+            admit = exchange -> {
+                admitted.increment();
+                exchange.addExchangeCompleteListener(completion);
+                next.handleRequest(exchange);
+            };
+        }
+
+        private long getActive() {
+            return admitted.sum() - completed.sum();
+        }
+
+        private long getQueued() {
+            // Read in reverse order of updates, so the result is not negative
+            long done = admitted.sum() + rejected.sum();
+            return Math.max(0, arrived.sum() - done);
+        }
+    }
+
+    /**
+     * Creates a new admission handler.
+     * 
+     * @param next
+     *            the handler for admitted requests
+     * @param configuration
+     *            the configuration with the limits
+     */
+    AdmissionHandler(HttpHandler next, ServerConfiguration configuration) {
+        this.next = next;
+        Stream.of(configuration.getMetricsPath(),
+                configuration.getHealthPath(),
+                configuration.getReadinessPath()).filter(Objects::nonNull)
+                .forEach(unlimitedPaths::add);
+        int queueSize = configuration.getMaxQueuedRequests();
+        int retryAfter = configuration.getRetryAfter();
+        lanes = new Lane[Limit.values().length];
+        lanes[Limit.DEFAULT.ordinal()] = new Lane(next,
+                configuration.getMaxConcurrentRequests(), queueSize,
+                retryAfter);
+        lanes[Limit.HEARTBEAT.ordinal()] = new Lane(next,
+                configuration.getMaxConcurrentHeartbeatRequests(), queueSize,
+                retryAfter);
+        lanes[Limit.STATIC.ordinal()] = new Lane(next,
+                configuration.getMaxConcurrentStaticRequests(), queueSize,
+                retryAfter);
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        RequestType type = MetricsHandler.getRequestType(exchange);
+        if (type == RequestType.PUSH
+                || unlimitedPaths.contains(exchange.getRequestPath())) {
+            next.handleRequest(exchange);
+            return;
+        }
+        Lane lane = lanes[getLimit(type).ordinal()];
+        lane.arrived.increment();
+        lane.limit.handleRequest(exchange, lane.admit);
+    }
+
+    private static Limit getLimit(RequestType type) {
+        switch (type) {
+        case HEARTBEAT:
+            return Limit.HEARTBEAT;
+        case STATIC:
+            return Limit.STATIC;
+        default:
+            return Limit.DEFAULT;
+        }
+    }
+
+    /**
+     * Gets a snapshot of the admission statistics.
+     * 
+     * @return the admission statistics
+     */
+    AdmissionStatistics getStatistics() {
+        int[] max = new int[lanes.length];
+        long[] active = new long[lanes.length];
+        long[] queued = new long[lanes.length];
+        long[] rejected = new long[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            max[i] = lanes[i].limit.getMaximumConcurrentRequests();
+            active[i] = lanes[i].getActive();
+            queued[i] = lanes[i].getQueued();
+            rejected[i] = lanes[i].rejected.sum();
+        }
+        return new AdmissionStatistics(max, active, queued, rejected);
+    }
+
+    @Override
+    public Map<String, Integer> getMaxConcurrentRequests() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        for (Limit limit : Limit.values()) {
+            values.put(limit.name().toLowerCase(Locale.ROOT),
+                    lanes[limit.ordinal()].limit
+                            .getMaximumConcurrentRequests());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getActiveRequests() {
+        return collect(Lane::getActive);
+    }
+
+    @Override
+    public Map<String, Long> getQueuedRequests() {
+        return collect(Lane::getQueued);
+    }
+
+    @Override
+    public Map<String, Long> getRejectedRequests() {
+        return collect(lane -> lane.rejected.sum());
+    }
+
+    private Map<String, Long> collect(ToLongFunction<Lane> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Limit limit : Limit.values()) {
+            values.put(limit.name().toLowerCase(Locale.ROOT),
+                    value.applyAsLong(lanes[limit.ordinal()]));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,127 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of the statistics of the admission control.
+ * 
+ * @see UndertowServer#getAdmissionStatistics()
+ */
+public class AdmissionStatistics {
+
+    /**
+     * Concurrency limits with a queue of their own.
+     */
+    public enum Limit {
+        /**
+         * Bootstrap and UIDL requests. Push requests are not limited.
+         */
+        DEFAULT,
+        /**
+         * Heartbeat requests.
+         */
+        HEARTBEAT,
+        /**
+         * Static resource requests under {@code /VAADIN/}.
+         */
+        STATIC;
+    }
+
+    private final int[] maxConcurrentRequests;
+    private final long[] activeRequests;
+    private final long[] queuedRequests;
+    private final long[] rejectedRequests;
+
+    AdmissionStatistics(int[] maxConcurrentRequests, long[] activeRequests,
+            long[] queuedRequests, long[] rejectedRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.activeRequests = activeRequests;
+        this.queuedRequests = queuedRequests;
+        this.rejectedRequests = rejectedRequests;
+    }
+
+    /**
+     * Gets the maximum number of concurrent requests of a limit.
+     * 
+     * @param limit
+     *            the limit
+     * @return the concurrency limit
+     */
+    public int getMaxConcurrentRequests(Limit limit) {
+        return maxConcurrentRequests[limit.ordinal()];
+    }
+
+    /**
+     * Gets the number of admitted requests being processed under a limit.
+     * 
+     * @param limit
+     *            the limit
+     * @return the active request count
+     */
+    public long getActiveRequests(Limit limit) {
+        return activeRequests[limit.ordinal()];
+    }
+
+    /**
+     * Gets the number of requests waiting for admission under a limit.
+     * 
+     * @param limit
+     *            the limit
+     * @return the queue depth
+     */
+    public long getQueuedRequests(Limit limit) {
+        return queuedRequests[limit.ordinal()];
+    }
+
+    /**
+     * Gets the number of requests waiting for admission under all limits.
+     * 
+     * @return the total queue depth
+     */
+    public long getQueuedRequests() {
+        long total = 0;
+        for (long queued : queuedRequests) {
+            total += queued;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of requests rejected under a limit because its queue
+     * was full.
+     * 
+     * @param limit
+     *            the limit
+     * @return the rejection count
+     */
+    public long getRejectedRequests(Limit limit) {
+        return rejectedRequests[limit.ordinal()];
+    }
+
+    /**
+     * Gets the number of requests rejected under all limits.
+     * 
+     * @return the total rejection count
+     */
+    public long getRejectedRequests() {
+        long total = 0;
+        for (long rejected : rejectedRequests) {
+            total += rejected;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Limit limit : Limit.values()) {
+            int i = limit.ordinal();
+            builder.append(limit.name().toLowerCase(Locale.ROOT))
+                    .append(": active=").append(activeRequests[i]).append('/')
+                    .append(maxConcurrentRequests[i]).append(" queued=")
+                    .append(queuedRequests[i]).append(" rejected=")
+                    .append(rejectedRequests[i]).append(' ');
+        }
+        return builder.toString().trim();
+    }
+}
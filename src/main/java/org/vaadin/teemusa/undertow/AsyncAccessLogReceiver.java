@@ -0,0 +1,246 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.undertow.server.handlers.accesslog.AccessLogReceiver;
+
+/**
+ * Access log receiver that never blocks the request path. Entries are put
+ * into a bounded lock-free ring buffer, and a background thread writes them
+ * to disk in batches. When the buffer is full, entries are dropped and
+ * counted instead of waited for. If writing fails, the entries of the batch
+ * are dropped, the file is opened again and the writer keeps going, so a
+ * full disk or a removed directory does not end access logging for good.
+ * <p>
+ * The log is written to {@code access.log} in the log directory and rotated
+ * daily, keeping the entries of earlier days in
+ * {@code access.<yyyy-MM-dd>.log}.
+ * 
+ * @see ServerConfiguration#setAccessLogDirectory(Path)
+ */
+class AsyncAccessLogReceiver implements AccessLogReceiver {
+
+    private static final String PREFIX = "access";
+    private static final int BATCH_SIZE = 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Path directory;
+    private final int mask;
+    private final AtomicReferenceArray<String> slots;
+    private final AtomicLong tail = new AtomicLong();
+    // Written by the writer thread only
+    private volatile long head;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+    // Written by the writer thread only
+    private boolean failing;
+
+    private volatile Thread writer;
+    private Writer out;
+    private LocalDate date;
+
+    /**
+     * Creates a new access log receiver.
+     * 
+     * @param directory
+     *            the directory to write the log files to
+     * @param bufferSize
+     *            the number of entries the buffer can hold, rounded up to a
+     *            power of two
+     */
+    AsyncAccessLogReceiver(Path directory, int bufferSize) {
+        this.directory = directory;
+        int capacity = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void logMessage(String message) {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+        slots.lazySet((int) claimed & mask, message);
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    synchronized void start() {
+        if (writer == null) {
+            writer = new Thread(this::write, "access-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Stops the writer thread once the buffered entries have been written,
+     * and closes the log file.
+     */
+    synchronized void stop() {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        writer = null;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        Thread current = Thread.currentThread();
+        try {
+            while (writer == current) {
+                if (drain() == 0) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+            // Entries logged by requests completed before stopping
+            while (drain() > 0) {
+                // Keep draining
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes a batch of entries and flushes them. If writing fails, the
+     * entries taken from the buffer are dropped and the log file is closed,
+     * to be opened again by the next batch.
+     * 
+     * @return the number of entries written, 0 if there were none or writing
+     *         failed
+     */
+    private int drain() {
+        int count = 0;
+        long position = head;
+        try {
+            while (count < BATCH_SIZE) {
+                int index = (int) position & mask;
+                String message = slots.get(index);
+                if (message == null) {
+                    // Empty, or claimed but not yet published
+                    break;
+                }
+                if (count == 0) {
+                    rotate();
+                }
+                out.write(message);
+                out.write('\n');
+                slots.lazySet(index, null);
+                head = ++position;
+                count++;
+            }
+            if (count > 0) {
+                out.flush();
+                written.add(count);
+                failing = false;
+            }
+            return count;
+        } catch (IOException e) {
+            writeErrors.increment();
+            dropped.add(count);
+            if (!failing) {
+                // Logged once until writing succeeds again
+                getLogger().log(Level.WARNING, "Could not write access log",
+                        e);
+                failing = true;
+            }
+            discard();
+            return 0;
+        }
+    }
+
+    private void rotate() throws IOException {
+        LocalDate today = LocalDate.now();
+        if (out != null && today.equals(date)) {
+            return;
+        }
+        Path file = directory.resolve(PREFIX + ".log");
+        if (out != null) {
+            out.close();
+            out = null;
+        } else if (Files.exists(file)) {
+            // Left over from an earlier run
+            date = Files.getLastModifiedTime(file).toInstant()
+                    .atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+        if (date != null && date.isBefore(today) && Files.exists(file)) {
+            Files.move(file, directory.resolve(PREFIX + "." + date + ".log"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.createDirectories(directory);
+        out = new BufferedWriter(Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), 64 * 1024);
+        date = today;
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Could not close access log",
+                        e);
+            }
+            out = null;
+        }
+    }
+
+    private void discard() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Already reported as a write error
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Gets a snapshot of the access log statistics.
+     * 
+     * @return the access log statistics
+     */
+    AccessLogStatistics getStatistics() {
+        long writtenEntries = written.sum();
+        long droppedEntries = dropped.sum();
+        return new AccessLogStatistics(writtenEntries, droppedEntries,
+                writeErrors.sum(), Math.max(0, tail.get() - head), mask + 1);
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(AsyncAccessLogReceiver.class.getSimpleName());
+    }
+}
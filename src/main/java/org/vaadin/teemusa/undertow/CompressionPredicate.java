@@ -0,0 +1,57 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Locale;
+import java.util.Set;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+
+/**
+ * Predicate deciding whether a response should be compressed. Evaluated when
+ * the response is started, so the response headers are available.
+ */
+class CompressionPredicate implements Predicate {
+
+    private final Set<String> mimeTypes;
+    private final long threshold;
+
+    /**
+     * Creates a new compression predicate.
+     * 
+     * @param configuration
+     *            the configuration with the compression settings
+     */
+    CompressionPredicate(ServerConfiguration configuration) {
+        mimeTypes = configuration.getCompressibleMimeTypes();
+        threshold = configuration.getCompressionThreshold();
+    }
+
+    @Override
+    public boolean resolve(HttpServerExchange exchange) {
+        HeaderMap headers = exchange.getResponseHeaders();
+        if (headers.contains(Headers.CONTENT_ENCODING)) {
+            // Already compressed
+            return false;
+        }
+
+        String contentType = headers.getFirst(Headers.CONTENT_TYPE);
+        if (contentType == null) {
+            return false;
+        }
+        int separator = contentType.indexOf(';');
+        String mimeType = separator < 0 ? contentType
+                : contentType.substring(0, separator);
+        if (!mimeTypes.contains(mimeType.trim().toLowerCase(Locale.ENGLISH))) {
+            return false;
+        }
+
+        String length = headers.getFirst(Headers.CONTENT_LENGTH);
+        try {
+            return length == null || Long.parseLong(length) >= threshold;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the statistics of the pre-compressed static resource cache.
+ * 
+ * @see UndertowServer#getCompressionStatistics()
+ */
+public class CompressionStatistics {
+
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long originalBytes;
+    private final long compressedBytes;
+    private final long compressionNanos;
+
+    CompressionStatistics(long cacheHits, long cacheMisses, long originalBytes,
+            long compressedBytes, long compressionNanos) {
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.originalBytes = originalBytes;
+        this.compressedBytes = compressedBytes;
+        this.compressionNanos = compressionNanos;
+    }
+
+    /**
+     * Gets the number of requests served from already compressed resources.
+     * 
+     * @return the cache hit count
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * Gets the number of requests for which a resource was compressed.
+     * 
+     * @return the cache miss count
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Gets the total size of the compressed resources before compression.
+     * 
+     * @return the uncompressed size in bytes
+     */
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    /**
+     * Gets the total size of the compressed resources after compression.
+     * 
+     * @return the compressed size in bytes
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Gets the difference between the original and compressed size of the
+     * compressed resources.
+     * 
+     * @return the saved size in bytes
+     */
+    public long getBytesSaved() {
+        return originalBytes - compressedBytes;
+    }
+
+    /**
+     * Gets the time spent on loading and compressing resources.
+     * 
+     * @param unit
+     *            the time unit of the result
+     * @return the compression time
+     */
+    public long getCompressionTime(TimeUnit unit) {
+        return unit.convert(compressionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Combines these statistics with the statistics of another deployment.
+     * 
+     * @param other
+     *            the statistics to add
+     * @return the summed statistics
+     */
+    CompressionStatistics add(CompressionStatistics other) {
+        return new CompressionStatistics(cacheHits + other.cacheHits,
+                cacheMisses + other.cacheMisses,
+                originalBytes + other.originalBytes,
+                compressedBytes + other.compressedBytes,
+                compressionNanos + other.compressionNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + cacheHits + " misses=" + cacheMisses + " original="
+                + originalBytes + "B compressed=" + compressedBytes
+                + "B compressionTime="
+                + getCompressionTime(TimeUnit.MILLISECONDS) + "ms";
+    }
+}
@@ -0,0 +1,111 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Handler serving the health or readiness of a server as JSON. Runs on the IO
+ * thread and never reaches the servlet container, so probes do not create
+ * sessions.
+ * 
+ * @see ServerConfiguration#setHealthPath(String)
+ * @see ServerConfiguration#setReadinessPath(String)
+ */
+class HealthHandler implements HttpHandler {
+
+    private final UndertowServer server;
+    private final boolean readiness;
+
+    /**
+     * Counter of the requests being processed by the deployments.
+     */
+    static class ActiveRequests {
+        private final LongAdder started = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final ExchangeCompletionListener completion = (exchange,
+                nextListener) -> {
+            completed.increment();
+            nextListener.proceed();
+        };
+
+        /**
+         * Wraps a handler so that its requests are counted.
+         * 
+         * @param next
+         *            the handler of a deployment
+         * @return the counting handler
+         */
+        HttpHandler track(HttpHandler next) {
+            return exchange -> {
+                started.increment();
+                exchange.addExchangeCompleteListener(completion);
+                next.handleRequest(exchange);
+            };
+        }
+
+        /**
+         * Gets the number of requests being processed.
+         * 
+         * @return the active request count
+         */
+        long get() {
+            // Read in reverse order of updates, so the result is not negative
+            long done = completed.sum();
+            return started.sum() - done;
+        }
+    }
+
+    /**
+     * Creates a new health endpoint.
+     * 
+     * @param server
+     *            the server to report
+     * @param readiness
+     *            {@code true} to answer {@code 503 Service Unavailable} while
+     *            the server is not ready
+     */
+    HealthHandler(UndertowServer server, boolean readiness) {
+        this.server = server;
+        this.readiness = readiness;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        Map<String, String> deployments = server.getDeploymentStates();
+        boolean ready = server.isReady() && deployments.values().stream()
+                .allMatch("STARTED"::equals);
+        boolean up = ready || !readiness;
+
+        StringBuilder out = new StringBuilder(256);
+        out.append("{\"status\":\"").append(up ? "UP" : "DOWN")
+                .append("\",\"ready\":").append(ready)
+                .append(",\"deployments\":{");
+        String separator = "";
+        for (Map.Entry<String, String> deployment : deployments.entrySet()) {
+            out.append(separator).append('"')
+                    .append(escape(deployment.getKey())).append("\":\"")
+                    .append(deployment.getValue()).append('"');
+            separator = ",";
+        }
+        out.append("},\"activeRequests\":").append(server.getActiveRequests())
+                .append(",\"queuedRequests\":")
+                .append(server.getQueuedRequests()).append('}');
+
+        exchange.setStatusCode(
+                up ? StatusCodes.OK : StatusCodes.SERVICE_UNAVAILABLE);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
+                "application/json; charset=utf-8");
+        exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+        exchange.getResponseSender().send(out.toString());
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,146 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with log-linear buckets in microsecond
+ * resolution. Each power of two is split into eight buckets, so recorded
+ * values are accurate to within 12.5%. Recording does not allocate and does
+ * not lock, which makes it suitable for the request path.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     * 
+     * @param nanos
+     *            the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(getBucket(micros));
+        count.increment();
+        sum.add(micros);
+        long currentMax;
+        while (micros > (currentMax = max.get())
+                && !max.compareAndSet(currentMax, micros)) {
+            // Retry until the maximum is updated or exceeded
+        }
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     * 
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded latencies.
+     * 
+     * @param unit
+     *            the unit of the result
+     * @return the total latency
+     */
+    public double getSum(TimeUnit unit) {
+        return toUnit(sum.sum(), unit);
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     * 
+     * @param unit
+     *            the unit of the result
+     * @return the mean latency, or 0 if nothing has been recorded
+     */
+    public double getMean(TimeUnit unit) {
+        long n = count.sum();
+        return n == 0 ? 0 : toUnit(sum.sum(), unit) / n;
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     * 
+     * @param unit
+     *            the unit of the result
+     * @return the maximum latency
+     */
+    public double getMax(TimeUnit unit) {
+        return toUnit(max.get(), unit);
+    }
+
+    /**
+     * Gets the latency below which the given percentage of recorded latencies
+     * fall. The result is the upper bound of the bucket containing the
+     * percentile.
+     * 
+     * @param percentile
+     *            the percentile between 0 and 100
+     * @param unit
+     *            the unit of the result
+     * @return the latency at the percentile, or 0 if nothing has been
+     *         recorded
+     */
+    public double getPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                    "Percentile must be between 0 and 100, was " + percentile);
+        }
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return toUnit(Math.min(getUpperBound(i), max.get()), unit);
+            }
+        }
+        return toUnit(max.get(), unit);
+    }
+
+    private static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1L) << (exponent - SUB_BUCKET_BITS))
+                - 1;
+    }
+
+    private static double toUnit(long micros, TimeUnit unit) {
+        return micros * 1000.0 / unit.toNanos(1);
+    }
+}
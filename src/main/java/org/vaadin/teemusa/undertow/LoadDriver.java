@@ -0,0 +1,472 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+import io.undertow.client.ClientCallback;
+import io.undertow.client.ClientConnection;
+import io.undertow.client.ClientExchange;
+import io.undertow.client.ClientRequest;
+import io.undertow.client.UndertowClient;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.server.DefaultByteBufferPool;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+import io.undertow.util.StringReadChannelListener;
+import io.undertow.util.StringWriteChannelListener;
+
+/**
+ * Headless load generator for Vaadin UIs. Simulates users that open the UI
+ * and keep clicking its first button, with each user in a session of its own.
+ * <p>
+ * Requests are sent with non-blocking HTTP clients over a fixed number of
+ * connections. Each connection has one request in flight at a time and
+ * serves its share of the sessions in turn, so thousands of sessions can be
+ * simulated with a few file descriptors and threads. The load is closed-loop:
+ * a new request is sent as soon as the previous one on the same connection
+ * completes.
+ * 
+ * <pre>
+ * LoadReport report = LoadDriver.create(rule.getServer()).setSessions(1000)
+ *         .run(Duration.ofSeconds(30));
+ * </pre>
+ * 
+ * @see LoadReport
+ */
+public class LoadDriver {
+
+    private final String baseURL;
+    private int sessions = 100;
+    private int connections = 16;
+    private int ioThreads = 2;
+    private final Map<HttpString, String> headers = new LinkedHashMap<>();
+
+    private LoadDriver(String baseURL) {
+        this.baseURL = baseURL.endsWith("/") ? baseURL : baseURL + "/";
+    }
+
+    /**
+     * Creates a load driver for the deployment of a started server. The
+     * server is accessed through the loopback interface.
+     * 
+     * @param server
+     *            the started server
+     * @return a new load driver
+     */
+    public static LoadDriver create(UndertowServer server) {
+        return create("http://localhost:" + server.getPort() + "/");
+    }
+
+    /**
+     * Creates a load driver for the deployment at the given URL.
+     * 
+     * @param baseURL
+     *            the URL of the deployment
+     * @return a new load driver
+     */
+    public static LoadDriver create(String baseURL) {
+        return new LoadDriver(baseURL);
+    }
+
+    /**
+     * Sets the number of simulated sessions. Defaults to 100.
+     * 
+     * @param sessions
+     *            the number of sessions
+     * @return this load driver
+     */
+    public LoadDriver setSessions(int sessions) {
+        this.sessions = requirePositive(sessions, "Session count");
+        return this;
+    }
+
+    /**
+     * Sets the number of connections the requests are sent over. This is
+     * also the number of concurrent requests. Defaults to 16.
+     * 
+     * @param connections
+     *            the number of connections
+     * @return this load driver
+     */
+    public LoadDriver setConnections(int connections) {
+        this.connections = requirePositive(connections, "Connection count");
+        return this;
+    }
+
+    /**
+     * Sets the number of IO threads of the HTTP clients. Defaults to 2.
+     * 
+     * @param ioThreads
+     *            the number of IO threads
+     * @return this load driver
+     */
+    public LoadDriver setIoThreads(int ioThreads) {
+        this.ioThreads = requirePositive(ioThreads, "IO thread count");
+        return this;
+    }
+
+    /**
+     * Sets a header sent with every request, for example to mark the
+     * requests as synthetic.
+     * 
+     * @param name
+     *            the header name
+     * @param value
+     *            the header value
+     * @return this load driver
+     */
+    LoadDriver setHeader(String name, String value) {
+        headers.put(new HttpString(name), value);
+        return this;
+    }
+
+    /**
+     * Runs the load for the given time and waits for the results.
+     * 
+     * @param duration
+     *            how long to generate load
+     * @return the results
+     */
+    public LoadReport run(Duration duration) {
+        return UndertowServer.await(runAsync(duration));
+    }
+
+    /**
+     * Runs the load for the given time without blocking the calling thread.
+     * 
+     * @param duration
+     *            how long to generate load
+     * @return future completed with the results once the run has finished
+     */
+    public CompletableFuture<LoadReport> runAsync(Duration duration) {
+        XnioWorker worker;
+        try {
+            worker = Xnio.getInstance(LoadDriver.class.getClassLoader())
+                    .createWorker(OptionMap.builder()
+                            .set(Options.WORKER_IO_THREADS, ioThreads)
+                            .set(Options.WORKER_TASK_CORE_THREADS, ioThreads)
+                            .set(Options.WORKER_TASK_MAX_THREADS, ioThreads)
+                            .set(Options.TCP_NODELAY, true)
+                            .set(Options.THREAD_DAEMON, true).getMap());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create load driver worker",
+                    e);
+        }
+        ByteBufferPool bufferPool = new DefaultByteBufferPool(true,
+                16 * 1024);
+        Run run = new Run(worker, bufferPool, System.nanoTime(),
+                duration.toNanos());
+
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            List<SimulatedSession> laneSessions = new ArrayList<>();
+            for (int j = i; j < sessions; j += connections) {
+                laneSessions.add(new SimulatedSession());
+            }
+            if (!laneSessions.isEmpty()) {
+                lanes.add(new Lane(run, laneSessions).start());
+            }
+        }
+
+        return CompletableFuture
+                .allOf(lanes.toArray(new CompletableFuture[lanes.size()]))
+                .handle((v, e) -> {
+                    worker.shutdown();
+                    bufferPool.close();
+                    return run.createReport();
+                });
+    }
+
+    /**
+     * Shared state of one load test run.
+     */
+    private static class Run {
+        private final XnioWorker worker;
+        private final ByteBufferPool bufferPool;
+        private final long start;
+        private final long deadline;
+        private final LongAdder sessions = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final Set<String> sessionIds = ConcurrentHashMap.newKeySet();
+        private final LatencyHistogram bootstrapLatency;
+        private final LatencyHistogram uidlLatency;
+
+        private Run(XnioWorker worker, ByteBufferPool bufferPool, long start,
+                long duration) {
+            this.worker = worker;
+            this.bufferPool = bufferPool;
+            this.start = start;
+            this.deadline = start + duration;
+            bootstrapLatency = new LatencyHistogram();
+            uidlLatency = new LatencyHistogram();
+        }
+
+        private boolean isOver() {
+            return System.nanoTime() - deadline >= 0;
+        }
+
+        private LoadReport createReport() {
+            return new LoadReport(Duration.ofNanos(System.nanoTime() - start),
+                    sessions.sum(), errors.sum(), sessionIds, bootstrapLatency,
+                    uidlLatency);
+        }
+    }
+
+    /**
+     * Client side state of one simulated user.
+     */
+    private static class SimulatedSession {
+        private String cookie;
+        private UidlSession uidl;
+
+        private void reset() {
+            cookie = null;
+            uidl = null;
+        }
+    }
+
+    /**
+     * Response of a request with its body read as a string.
+     */
+    private static class Response {
+        private final int status;
+        private final String body;
+        private final String cookie;
+
+        private Response(int status, String body, String cookie) {
+            this.status = status;
+            this.body = body;
+            this.cookie = cookie;
+        }
+    }
+
+    /**
+     * One connection taking turns sending the requests of its sessions.
+     */
+    private class Lane {
+        private final Run run;
+        private final List<SimulatedSession> sessions;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private ClientConnection connection;
+        private int next;
+
+        private Lane(Run run, List<SimulatedSession> sessions) {
+            this.run = run;
+            this.sessions = sessions;
+        }
+
+        private CompletableFuture<Void> start() {
+            runNext();
+            return done;
+        }
+
+        private void runNext() {
+            if (run.isOver()) {
+                IoUtils.safeClose(connection);
+                done.complete(null);
+                return;
+            }
+            SimulatedSession session = sessions.get(next);
+            next = (next + 1) % sessions.size();
+            CompletableFuture<Void> step;
+            try {
+                step = session.uidl == null ? bootstrap(session)
+                        : click(session);
+            } catch (RuntimeException e) {
+                step = new CompletableFuture<>();
+                step.completeExceptionally(e);
+            }
+            // Continue on a worker thread to keep the IO threads free and
+            // the stack flat
+            step.whenCompleteAsync((v, e) -> {
+                if (e != null) {
+                    run.errors.increment();
+                    session.reset();
+                    IoUtils.safeClose(connection);
+                    connection = null;
+                }
+                runNext();
+            }, run.worker);
+        }
+
+        private CompletableFuture<Void> bootstrap(SimulatedSession session) {
+            long start = System.nanoTime();
+            return send(session, Methods.GET, "", null, null)
+                    .thenCompose(r -> send(session, Methods.POST,
+                            UidlSession.getInitPath(),
+                            "application/x-www-form-urlencoded",
+                            UidlSession.getInitRequest(baseURL)))
+                    .thenAccept(r -> {
+                        try {
+                            session.uidl = UidlSession.init(r.body);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                        run.bootstrapLatency.record(System.nanoTime() - start);
+                        run.sessions.increment();
+                    });
+        }
+
+        private CompletableFuture<Void> click(SimulatedSession session) {
+            long start = System.nanoTime();
+            return send(session, Methods.POST, session.uidl.getUidlPath(),
+                    "application/json; charset=UTF-8",
+                    session.uidl.createClick()).thenAccept(r -> {
+                        try {
+                            session.uidl.update(r.body);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                        run.uidlLatency.record(System.nanoTime() - start);
+                    });
+        }
+
+        private CompletableFuture<Response> send(SimulatedSession session,
+                HttpString method, String path, String contentType,
+                String body) {
+            return connect().thenCompose(c -> {
+                ClientRequest request = new ClientRequest().setMethod(method)
+                        .setPath(URI.create(baseURL).getRawPath() + path);
+                request.getRequestHeaders().put(Headers.HOST,
+                        URI.create(baseURL).getAuthority());
+                headers.forEach(request.getRequestHeaders()::put);
+                if (session.cookie != null) {
+                    request.getRequestHeaders().put(Headers.COOKIE,
+                            session.cookie);
+                }
+                if (body != null) {
+                    request.getRequestHeaders().put(Headers.CONTENT_TYPE,
+                            contentType);
+                    request.getRequestHeaders().put(Headers.CONTENT_LENGTH,
+                            body.getBytes(StandardCharsets.UTF_8).length);
+                }
+                CompletableFuture<Response> result = new CompletableFuture<>();
+                c.sendRequest(request, new ExchangeCallback(body, result));
+                return result;
+            }).thenApply(r -> {
+                if (r.status != StatusCodes.OK) {
+                    throw new RuntimeException("Unexpected response status "
+                            + r.status + " for " + method + " " + path);
+                }
+                if (r.cookie != null) {
+                    session.cookie = r.cookie;
+                    run.sessionIds.add(
+                            r.cookie.substring(r.cookie.indexOf('=') + 1));
+                }
+                return r;
+            });
+        }
+
+        private CompletableFuture<ClientConnection> connect() {
+            if (connection != null && connection.isOpen()) {
+                return CompletableFuture.completedFuture(connection);
+            }
+            CompletableFuture<ClientConnection> future;
+            future = new CompletableFuture<>();
+            UndertowClient.getInstance().connect(
+                    new ClientCallback<ClientConnection>() {
+                        @Override
+                        public void completed(ClientConnection result) {
+                            connection = result;
+                            future.complete(result);
+                        }
+
+                        @Override
+                        public void failed(IOException e) {
+                            future.completeExceptionally(e);
+                        }
+                    }, URI.create(baseURL), run.worker, run.bufferPool,
+                    OptionMap.EMPTY);
+            return future;
+        }
+
+        /**
+         * Writes the request body and reads the response body of an
+         * exchange.
+         */
+        private class ExchangeCallback
+                implements ClientCallback<ClientExchange> {
+            private final String body;
+            private final CompletableFuture<Response> response;
+
+            private ExchangeCallback(String body,
+                    CompletableFuture<Response> response) {
+                this.body = body;
+                this.response = response;
+            }
+
+            @Override
+            public void completed(ClientExchange exchange) {
+                exchange.setResponseListener(
+                        new ClientCallback<ClientExchange>() {
+                            @Override
+                            public void completed(ClientExchange result) {
+                                readResponse(result);
+                            }
+
+                            @Override
+                            public void failed(IOException e) {
+                                response.completeExceptionally(e);
+                            }
+                        });
+                if (body != null) {
+                    new StringWriteChannelListener(body)
+                            .setup(exchange.getRequestChannel());
+                }
+            }
+
+            @Override
+            public void failed(IOException e) {
+                response.completeExceptionally(e);
+            }
+
+            private void readResponse(ClientExchange exchange) {
+                int status = exchange.getResponse().getResponseCode();
+                HeaderValues setCookie = exchange.getResponse()
+                        .getResponseHeaders().get(Headers.SET_COOKIE);
+                String cookie = setCookie != null
+                        ? setCookie.getFirst().split(";", 2)[0]
+                        : null;
+                new StringReadChannelListener(run.bufferPool) {
+                    @Override
+                    protected void stringDone(String string) {
+                        response.complete(
+                                new Response(status, string, cookie));
+                    }
+
+                    @Override
+                    protected void error(IOException e) {
+                        response.completeExceptionally(e);
+                    }
+                }.setup(exchange.getResponseChannel());
+            }
+        }
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(
+                    name + " must be positive, was " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,121 @@
+package org.vaadin.teemusa.undertow;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a load test run with {@link LoadDriver}.
+ */
+public class LoadReport {
+
+    private final Duration duration;
+    private final long sessions;
+    private final long errors;
+    private final Set<String> sessionIds;
+    private final LatencyHistogram bootstrapLatency;
+    private final LatencyHistogram uidlLatency;
+
+    LoadReport(Duration duration, long sessions, long errors,
+            Set<String> sessionIds, LatencyHistogram bootstrapLatency,
+            LatencyHistogram uidlLatency) {
+        this.duration = duration;
+        this.sessions = sessions;
+        this.errors = errors;
+        this.sessionIds = Collections.unmodifiableSet(sessionIds);
+        this.bootstrapLatency = bootstrapLatency;
+        this.uidlLatency = uidlLatency;
+    }
+
+    /**
+     * Gets the wall-clock duration of the run.
+     * 
+     * @return the duration
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * Gets the number of UIs that were successfully bootstrapped.
+     * 
+     * @return the number of sessions
+     */
+    public long getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Gets the number of failed requests.
+     * 
+     * @return the error count
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Gets the ids of the HTTP sessions created for the simulated users,
+     * including those of sessions that were abandoned after an error.
+     * 
+     * @return the session ids
+     */
+    Set<String> getSessionIds() {
+        return sessionIds;
+    }
+
+    /**
+     * Gets the number of successful UIDL requests.
+     * 
+     * @return the UIDL request count
+     */
+    public long getUidlRequests() {
+        return uidlLatency.getCount();
+    }
+
+    /**
+     * Gets the number of successful UIDL requests per second.
+     * 
+     * @return the UIDL throughput
+     */
+    public double getThroughput() {
+        long nanos = duration.toNanos();
+        return nanos == 0 ? 0
+                : getUidlRequests() * (double) TimeUnit.SECONDS.toNanos(1)
+                        / nanos;
+    }
+
+    /**
+     * Gets the latencies of bootstrapping a UI, from loading the bootstrap
+     * page until the UI has been initialized.
+     * 
+     * @return the bootstrap latencies
+     */
+    public LatencyHistogram getBootstrapLatency() {
+        return bootstrapLatency;
+    }
+
+    /**
+     * Gets the latencies of UIDL round-trips.
+     * 
+     * @return the UIDL latencies
+     */
+    public LatencyHistogram getUidlLatency() {
+        return uidlLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "duration=%dms sessions=%d requests=%d errors=%d "
+                        + "throughput=%.1f/s p50=%.2fms p99=%.2fms "
+                        + "max=%.2fms",
+                duration.toMillis(), sessions, getUidlRequests(), errors,
+                getThroughput(),
+                uidlLatency.getPercentile(50, TimeUnit.MILLISECONDS),
+                uidlLatency.getPercentile(99, TimeUnit.MILLISECONDS),
+                uidlLatency.getMax(TimeUnit.MILLISECONDS));
+    }
+}
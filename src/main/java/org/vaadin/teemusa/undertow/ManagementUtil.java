@@ -0,0 +1,72 @@
+package org.vaadin.teemusa.undertow;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Helper class for registering server MBeans to the platform MBean server.
+ */
+class ManagementUtil {
+
+    private static final String DOMAIN = "org.vaadin.teemusa.undertow";
+
+    private ManagementUtil() {
+    }
+
+    /**
+     * Registers an MBean for the server listening on the given port. Failures
+     * are logged, since monitoring should never prevent the server from
+     * running.
+     * 
+     * @param mbean
+     *            the MBean to register
+     * @param type
+     *            the type key of the object name
+     * @param port
+     *            the port of the server
+     * @return the object name of the registered MBean, or {@code null} if
+     *         registration failed
+     */
+    static ObjectName register(Object mbean, String type, int port) {
+        try {
+            ObjectName name = new ObjectName(
+                    DOMAIN + ":type=" + type + ",port=" + port);
+            getServer().registerMBean(mbean, name);
+            return name;
+        } catch (JMException e) {
+            getLogger().log(Level.WARNING, "Could not register " + type, e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters an MBean registered with
+     * {@link #register(Object, String, int)}.
+     * 
+     * @param name
+     *            the object name, may be {@code null}
+     */
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            getServer().unregisterMBean(name);
+        } catch (JMException e) {
+            getLogger().log(Level.FINE, "Could not unregister " + name, e);
+        }
+    }
+
+    private static MBeanServer getServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ManagementUtil.class.getSimpleName());
+    }
+}
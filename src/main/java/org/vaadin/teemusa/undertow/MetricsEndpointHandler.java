@@ -0,0 +1,99 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.vaadin.teemusa.undertow.RequestMetrics.RequestType;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+
+/**
+ * Handler serving {@link RequestMetrics} in the Prometheus text format. Runs
+ * on the IO thread and never reaches the servlet container.
+ */
+class MetricsEndpointHandler implements HttpHandler {
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final RequestMetrics metrics;
+
+    /**
+     * Creates a new metrics endpoint.
+     * 
+     * @param metrics
+     *            the metrics to serve
+     */
+    MetricsEndpointHandler(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        StringBuilder out = new StringBuilder(4096);
+        appendFamily(out, "undertow_requests_total", "counter",
+                "Completed requests.");
+        append(out, "undertow_requests_total", null, metrics.getRequestCount());
+        appendFamily(out, "undertow_requests_in_flight", "gauge",
+                "Requests being processed.");
+        append(out, "undertow_requests_in_flight", null,
+                metrics.getInFlightRequests());
+        appendFamily(out, "undertow_request_rate_1m", "gauge",
+                "One minute average of completed requests per second.");
+        append(out, "undertow_request_rate_1m", null,
+                metrics.getRequestRate());
+        appendFamily(out, "undertow_received_bytes_total", "counter",
+                "Request content bytes received.");
+        append(out, "undertow_received_bytes_total", null,
+                metrics.getBytesIn());
+        appendFamily(out, "undertow_sent_bytes_total", "counter",
+                "Response bytes sent.");
+        append(out, "undertow_sent_bytes_total", null, metrics.getBytesOut());
+
+        // The samples of a family must be grouped under its header
+        appendFamily(out, "undertow_request_latency_seconds", "summary",
+                "Request latency by request type.");
+        for (RequestType type : RequestType.values()) {
+            LatencyHistogram latency = metrics.getLatency(type);
+            String typeLabel = "type=\"" + RequestMetrics.getKey(type) + "\"";
+            for (double quantile : QUANTILES) {
+                append(out, "undertow_request_latency_seconds",
+                        typeLabel + ",quantile=\"" + quantile + "\"",
+                        latency.getPercentile(quantile * 100,
+                                TimeUnit.SECONDS));
+            }
+            append(out, "undertow_request_latency_seconds_sum", typeLabel,
+                    latency.getSum(TimeUnit.SECONDS));
+            append(out, "undertow_request_latency_seconds_count", typeLabel,
+                    latency.getCount());
+        }
+
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE,
+                "text/plain; version=0.0.4; charset=utf-8");
+        exchange.getResponseSender().send(out.toString());
+    }
+
+    private static void appendFamily(StringBuilder out, String name,
+            String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help)
+                .append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type)
+                .append('\n');
+    }
+
+    private static void append(StringBuilder out, String name, String labels,
+            Number value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value instanceof Double) {
+            out.append(String.format(Locale.ROOT, "%.6f", value));
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
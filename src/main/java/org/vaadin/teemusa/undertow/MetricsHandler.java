@@ -0,0 +1,97 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.vaadin.teemusa.undertow.RequestMetrics.RequestType;
+
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+
+/**
+ * Handler recording {@link RequestMetrics} for every request. The completion
+ * listeners are created up front, so recording a request does not allocate.
+ * Latency is measured from the request start time recorded by Undertow.
+ * <p>
+ * Requests to the metrics, health and readiness endpoints are not recorded,
+ * so that frequent scraping and probing does not skew the bootstrap
+ * latencies.
+ */
+class MetricsHandler implements HttpHandler {
+
+    private final HttpHandler next;
+    private final RequestMetrics metrics;
+    private final ExchangeCompletionListener[] listeners;
+    private final Set<String> unrecordedPaths = new HashSet<>();
+
+    /**
+     * Creates a new metrics handler.
+     * 
+     * @param next
+     *            the next handler
+     * @param metrics
+     *            the metrics to record into
+     * @param configuration
+     *            the configuration with the endpoint paths
+     */
+    MetricsHandler(HttpHandler next, RequestMetrics metrics,
+            ServerConfiguration configuration) {
+        this.next = next;
+        this.metrics = metrics;
+        Stream.of(configuration.getMetricsPath(),
+                configuration.getHealthPath(),
+                configuration.getReadinessPath()).filter(Objects::nonNull)
+                .forEach(unrecordedPaths::add);
+
+        RequestType[] types = RequestType.values();
+        listeners = new ExchangeCompletionListener[types.length];
+        for (RequestType type : types) {
+            listeners[type.ordinal()] = (exchange, nextListener) -> {
+                try {
+                    long start = exchange.getRequestStartTime();
+                    metrics.requestCompleted(type,
+                            start > 0 ? System.nanoTime() - start : -1,
+                            exchange.getResponseBytesSent());
+                } finally {
+                    nextListener.proceed();
+                }
+            };
+        }
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        if (unrecordedPaths.contains(exchange.getRequestPath())) {
+            next.handleRequest(exchange);
+            return;
+        }
+        metrics.requestStarted(exchange.getRequestContentLength());
+        exchange.addExchangeCompleteListener(
+                listeners[getRequestType(exchange).ordinal()]);
+        next.handleRequest(exchange);
+    }
+
+    /**
+     * Classifies a request by the Vaadin 8 request paths.
+     * 
+     * @param exchange
+     *            the exchange
+     * @return the request type
+     */
+    static RequestType getRequestType(HttpServerExchange exchange) {
+        String path = exchange.getRequestPath();
+        if (path.contains("/VAADIN/")) {
+            return RequestType.STATIC;
+        } else if (path.contains("/UIDL/")) {
+            return RequestType.UIDL;
+        } else if (path.contains("/HEARTBEAT/")) {
+            return RequestType.HEARTBEAT;
+        } else if (path.endsWith("/PUSH") || path.contains("/PUSH/")) {
+            return RequestType.PUSH;
+        }
+        return RequestType.BOOTSTRAP;
+    }
+}
@@ -1,27 +1,35 @@
 package org.vaadin.teemusa.undertow;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
-import java.net.Socket;
 import java.net.SocketException;
 import java.util.Enumeration;
-import java.util.Random;
 
 /**
  * Helper class for network related utilities.
  */
 class NetworkUtil {
 
-    private static final int RANGE_START = 50000;
-    private static Random random = new Random();
+    private static volatile String deploymentHostname;
 
     /**
-     * Finds out a suitable hostname for a server to use from outside.
+     * Finds out a suitable hostname for a server to use from outside. The
+     * network interfaces are only enumerated once, so servers started
+     * concurrently do not all scan them.
      * 
      * @return hostname where the server should be accessible
      */
     public static String getDeploymentHostname() {
+        String hostname = deploymentHostname;
+        if (hostname == null) {
+            // Racing threads find the same address
+            hostname = findDeploymentHostname();
+            deploymentHostname = hostname;
+        }
+        return hostname;
+    }
+
+    private static String findDeploymentHostname() {
         try {
             Enumeration<NetworkInterface> interfaces = NetworkInterface
                     .getNetworkInterfaces();
@@ -50,33 +58,4 @@ class NetworkUtil {
         throw new RuntimeException("No compatible ip address found.");
     }
 
-    /**
-     * Gets a random port in range {@code [50 000, 60 000)}. The returned port
-     * has been tested to be available for the server to use.
-     * 
-     * @return random free port
-     */
-    public static int getRandomPort() {
-        int port;
-        do {
-            port = random.nextInt(10000) + RANGE_START;
-        } while (!available(port));
-        return port;
-    }
-
-    /**
-     * Helper method for testing if a port is available for use.
-     * 
-     * @param port
-     *            the port to test
-     * @return {@code true} if port is available; {@code false} if not
-     */
-    private static boolean available(int port) {
-        try (Socket ignored = new Socket("localhost", port)) {
-            return false;
-        } catch (IOException ignored) {
-            return true;
-        }
-    }
-
 }
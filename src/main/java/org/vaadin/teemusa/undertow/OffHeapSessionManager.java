@@ -0,0 +1,603 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.session.SecureRandomSessionIdGenerator;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionConfig;
+import io.undertow.server.session.SessionIdGenerator;
+import io.undertow.server.session.SessionListener;
+import io.undertow.server.session.SessionListener.SessionDestroyedReason;
+import io.undertow.server.session.SessionListeners;
+import io.undertow.server.session.SessionManager;
+import io.undertow.server.session.SessionManagerStatistics;
+import io.undertow.servlet.api.Deployment;
+import io.undertow.util.AttachmentKey;
+
+/**
+ * Session manager that moves idle sessions out of the Java heap. The
+ * attributes of a session that has not been accessed for the passivation time
+ * are serialized into a direct buffer and restored on the next access. The
+ * memory used for passivated sessions is bounded; once the bound is reached,
+ * idle sessions stay on the heap.
+ * <p>
+ * Passivation does not fire session listeners, as the attributes keep their
+ * logical values. Attributes implementing {@link Lock}, such as the lock of a
+ * {@code VaadinSession}, are held while the session is serialized, and a
+ * session whose lock is in use is left on the heap. So is a session with a UI
+ * that has an open push connection, as the connection and the threads
+ * pushing through it keep referring to the UIs on the heap.
+ * <p>
+ * A session is never passivated while requests are using it. A request uses
+ * a session from the moment it gets the session from this manager until the
+ * request is done, so that it cannot read attributes, such as the lock of
+ * the {@code VaadinSession}, before a passivation and work on the restored
+ * copies after it.
+ * 
+ * @see ServerConfiguration#setOffHeapSessions(boolean)
+ */
+class OffHeapSessionManager implements SessionManager {
+
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private final String deploymentName;
+    private final ClassLoader classLoader;
+    private final SessionIdGenerator sessionIdGenerator;
+    private final long maxMemory;
+    private final long passivationTime;
+
+    private final Map<String, OffHeapSession> sessions;
+    private final SessionListeners listeners = new SessionListeners();
+    private final AttachmentKey<OffHeapSession> requestSession = AttachmentKey
+            .create(OffHeapSession.class);
+    private final AtomicLong memoryUsed = new AtomicLong();
+    private final LongAdder passivations = new LongAdder();
+    private final LongAdder activations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile int defaultSessionTimeout = 30 * 60;
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Creates a new session manager for a deployment.
+     * 
+     * @param deployment
+     *            the deployment using the session manager
+     * @param configuration
+     *            the configuration with the memory bound and passivation time
+     */
+    OffHeapSessionManager(Deployment deployment,
+            ServerConfiguration configuration) {
+        sessions = new ConcurrentHashMap<>();
+        deploymentName = deployment.getDeploymentInfo().getDeploymentName();
+        classLoader = deployment.getDeploymentInfo().getClassLoader();
+        SessionIdGenerator generator = deployment.getDeploymentInfo()
+                .getSessionIdGenerator();
+        sessionIdGenerator = generator != null ? generator
+                : new SecureRandomSessionIdGenerator();
+        maxMemory = configuration.getOffHeapSessionMemory();
+        passivationTime = TimeUnit.SECONDS
+                .toMillis(configuration.getSessionPassivationTime());
+    }
+
+    @Override
+    public String getDeploymentName() {
+        return deploymentName;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r,
+                        "session-sweeper-" + deploymentName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL,
+                    SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        for (OffHeapSession session : new ArrayList<>(sessions.values())) {
+            session.invalidate(null, SessionDestroyedReason.UNDEPLOY);
+        }
+    }
+
+    @Override
+    public Session createSession(HttpServerExchange serverExchange,
+            SessionConfig sessionCookieConfig) {
+        OffHeapSession session;
+        do {
+            session = new OffHeapSession(
+                    sessionIdGenerator.createSessionId(), sessionCookieConfig);
+        } while (sessions.putIfAbsent(session.id, session) != null);
+        sessionCookieConfig.setSessionId(serverExchange, session.id);
+        session.requestStarted(serverExchange);
+        listeners.sessionCreated(session, serverExchange);
+        return session;
+    }
+
+    @Override
+    public Session getSession(HttpServerExchange serverExchange,
+            SessionConfig sessionCookieConfig) {
+        String sessionId = sessionCookieConfig.findSessionId(serverExchange);
+        OffHeapSession session = sessionId != null
+                ? (OffHeapSession) getSession(sessionId) : null;
+        if (session != null) {
+            session.requestStarted(serverExchange);
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(String sessionId) {
+        OffHeapSession session = sessions.get(sessionId);
+        if (session != null && session.isExpired(System.currentTimeMillis())) {
+            session.invalidate(null, SessionDestroyedReason.TIMEOUT);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void registerSessionListener(SessionListener listener) {
+        listeners.addSessionListener(listener);
+    }
+
+    @Override
+    public void removeSessionListener(SessionListener listener) {
+        listeners.removeSessionListener(listener);
+    }
+
+    @Override
+    public void setDefaultSessionTimeout(int timeout) {
+        defaultSessionTimeout = timeout;
+    }
+
+    @Override
+    public Set<String> getTransientSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getActiveSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getAllSessions() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    /**
+     * Statistics are reported with {@link #getSessionStoreStatistics()}
+     * instead. {@link SessionManager} allows {@code null} for managers that
+     * do not collect Undertow session statistics, which servlet deployments
+     * only read when session statistics are enabled for them.
+     * 
+     * @return {@code null}
+     */
+    @Override
+    public SessionManagerStatistics getStatistics() {
+        return null;
+    }
+
+    /**
+     * Gets the attributes of a session that is on the heap. Unlike reading
+     * them through the session, this neither restores a passivated session
+     * nor counts as an access.
+     * 
+     * @param sessionId
+     *            the id of the session
+     * @return a copy of the attributes, or {@code null} if the session does
+     *         not exist or is passivated
+     */
+    Map<String, Object> getHeapAttributes(String sessionId) {
+        OffHeapSession session = sessions.get(sessionId);
+        return session != null ? session.getHeapAttributes() : null;
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this session manager.
+     * 
+     * @return the session store statistics
+     */
+    SessionStoreStatistics getSessionStoreStatistics() {
+        int passivated = (int) sessions.values().stream()
+                .filter(OffHeapSession::isPassivated).count();
+        return new SessionStoreStatistics(sessions.size(), passivated,
+                memoryUsed.get(), maxMemory, passivations.sum(),
+                activations.sum(), failures.sum());
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (OffHeapSession session : sessions.values()) {
+            try {
+                if (session.isExpired(now)) {
+                    session.invalidate(null, SessionDestroyedReason.TIMEOUT);
+                } else if (session.activeRequests.get() == 0
+                        && now - session.lastAccessedTime >= passivationTime) {
+                    session.passivate(now);
+                }
+            } catch (RuntimeException e) {
+                // Keep sweeping the other sessions
+                failures.increment();
+            }
+        }
+    }
+
+    private boolean reserve(long bytes) {
+        long used;
+        do {
+            used = memoryUsed.get();
+            if (used + bytes > maxMemory) {
+                return false;
+            }
+        } while (!memoryUsed.compareAndSet(used, used + bytes));
+        return true;
+    }
+
+    /**
+     * Object input stream resolving classes with the deployment classloader.
+     */
+    private class DeploymentObjectInputStream extends ObjectInputStream {
+
+        private DeploymentObjectInputStream(InputStream in)
+                throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+    /**
+     * Session with attributes either on the heap or serialized in a direct
+     * buffer. Session listeners are always called without holding the lock
+     * of the session.
+     */
+    private class OffHeapSession implements Session {
+
+        private final long creationTime = System.currentTimeMillis();
+        private final SessionConfig sessionCookieConfig;
+        private final AtomicBoolean invalidationStarted = new AtomicBoolean();
+        private volatile String id;
+        private volatile long lastAccessedTime = creationTime;
+        private final AtomicInteger activeRequests = new AtomicInteger();
+        private volatile int maxInactiveInterval = defaultSessionTimeout;
+        private volatile boolean invalid;
+
+        // Exactly one of these is non-null while the session is valid
+        private Map<String, Object> attributes = new HashMap<>();
+        private ByteBuffer passivated;
+        private boolean serializable = true;
+
+        private OffHeapSession(String id, SessionConfig sessionCookieConfig) {
+            this.id = id;
+            this.sessionCookieConfig = sessionCookieConfig;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void requestDone(HttpServerExchange serverExchange) {
+            lastAccessedTime = System.currentTimeMillis();
+            if (serverExchange != null) {
+                release(serverExchange);
+            }
+        }
+
+        /**
+         * Counts a request as using this session until it is done. A request
+         * is counted once however many times it gets the session.
+         */
+        private void requestStarted(HttpServerExchange exchange) {
+            lastAccessedTime = System.currentTimeMillis();
+            if (exchange == null
+                    || exchange.getAttachment(requestSession) == this) {
+                return;
+            }
+            activeRequests.incrementAndGet();
+            OffHeapSession previous = exchange.putAttachment(requestSession,
+                    this);
+            if (previous != null) {
+                // The request moved on to a new session
+                previous.activeRequests.decrementAndGet();
+            } else {
+                // Also covers requests that end without requestDone()
+                exchange.addExchangeCompleteListener((ex, next) -> {
+                    OffHeapSession session = ex.getAttachment(requestSession);
+                    if (session != null) {
+                        session.release(ex);
+                    }
+                    next.proceed();
+                });
+            }
+        }
+
+        private void release(HttpServerExchange exchange) {
+            if (exchange.getAttachment(requestSession) == this
+                    && exchange.removeAttachment(requestSession) == this) {
+                activeRequests.decrementAndGet();
+            }
+        }
+
+        @Override
+        public long getCreationTime() {
+            checkValid();
+            return creationTime;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            checkValid();
+            return lastAccessedTime;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(int interval) {
+            checkValid();
+            maxInactiveInterval = interval;
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            checkValid();
+            return maxInactiveInterval;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            checkValid();
+            synchronized (this) {
+                return getAttributes().get(name);
+            }
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            checkValid();
+            synchronized (this) {
+                return Collections.unmodifiableSet(
+                        new HashSet<>(getAttributes().keySet()));
+            }
+        }
+
+        @Override
+        public Object setAttribute(String name, Object value) {
+            if (value == null) {
+                return removeAttribute(name);
+            }
+            checkValid();
+            Object old;
+            synchronized (this) {
+                old = getAttributes().put(name, value);
+            }
+            if (old == null) {
+                listeners.attributeAdded(this, name, value);
+            } else {
+                listeners.attributeUpdated(this, name, value, old);
+            }
+            return old;
+        }
+
+        @Override
+        public Object removeAttribute(String name) {
+            checkValid();
+            Object old;
+            synchronized (this) {
+                old = getAttributes().remove(name);
+            }
+            listeners.attributeRemoved(this, name, old);
+            return old;
+        }
+
+        @Override
+        public void invalidate(HttpServerExchange exchange) {
+            invalidate(exchange, SessionDestroyedReason.INVALIDATED);
+        }
+
+        private void invalidate(HttpServerExchange exchange,
+                SessionDestroyedReason reason) {
+            if (!invalidationStarted.compareAndSet(false, true)) {
+                return;
+            }
+            // Listeners may still read the attributes while being notified
+            listeners.sessionDestroyed(this, exchange, reason);
+            sessions.remove(id, this);
+            if (exchange != null) {
+                sessionCookieConfig.clearSession(exchange, id);
+            }
+            synchronized (this) {
+                invalid = true;
+                release();
+                attributes = null;
+            }
+        }
+
+        @Override
+        public SessionManager getSessionManager() {
+            return OffHeapSessionManager.this;
+        }
+
+        @Override
+        public String changeSessionId(HttpServerExchange exchange,
+                SessionConfig config) {
+            checkValid();
+            String oldId = id;
+            String newId;
+            do {
+                newId = sessionIdGenerator.createSessionId();
+            } while (sessions.putIfAbsent(newId, this) != null);
+            id = newId;
+            sessions.remove(oldId, this);
+            config.setSessionId(exchange, newId);
+            listeners.sessionIdChanged(this, oldId);
+            return newId;
+        }
+
+        private boolean isExpired(long now) {
+            int timeout = maxInactiveInterval;
+            return timeout > 0
+                    && now - lastAccessedTime > TimeUnit.SECONDS
+                            .toMillis(timeout);
+        }
+
+        private synchronized boolean isPassivated() {
+            return passivated != null;
+        }
+
+        private synchronized Map<String, Object> getHeapAttributes() {
+            return attributes != null ? new HashMap<>(attributes) : null;
+        }
+
+        private void checkValid() {
+            if (invalid) {
+                throw new IllegalStateException(
+                        "Session " + id + " has been invalidated");
+            }
+        }
+
+        /**
+         * Gets the attributes, restoring them from off-heap memory if the
+         * session has been passivated. Must be called while holding the lock
+         * of the session.
+         */
+        private Map<String, Object> getAttributes() {
+            if (attributes == null) {
+                if (passivated == null) {
+                    throw new IllegalStateException(
+                            "Session " + id + " has been invalidated");
+                }
+                attributes = deserialize(passivated.duplicate());
+                release();
+                activations.increment();
+            }
+            return attributes;
+        }
+
+        private synchronized void passivate(long now) {
+            if (attributes == null || !serializable || invalid
+                    || activeRequests.get() > 0
+                    || now - lastAccessedTime < passivationTime) {
+                return;
+            }
+            List<Lock> locks = new ArrayList<>();
+            try {
+                for (Object value : attributes.values()) {
+                    if (value instanceof Lock) {
+                        if (!((Lock) value).tryLock()) {
+                            // The session is in use
+                            return;
+                        }
+                        locks.add((Lock) value);
+                    }
+                }
+                // UIs can only be inspected while holding the locks
+                for (Object value : attributes.values()) {
+                    if (value instanceof VaadinSession
+                            && isPushConnected((VaadinSession) value)) {
+                        return;
+                    }
+                }
+                byte[] data = serialize(attributes);
+                if (data == null || !reserve(data.length)) {
+                    return;
+                }
+                passivated = ByteBuffer.allocateDirect(data.length);
+                passivated.put(data).flip();
+                attributes = null;
+                passivations.increment();
+            } finally {
+                locks.forEach(Lock::unlock);
+            }
+        }
+
+        private boolean isPushConnected(VaadinSession vaadinSession) {
+            for (UI ui : vaadinSession.getUIs()) {
+                if (ui.getPushConnection() != null
+                        && ui.getPushConnection().isConnected()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void release() {
+            if (passivated != null) {
+                memoryUsed.addAndGet(-passivated.capacity());
+                passivated = null;
+            }
+        }
+
+        private byte[] serialize(Map<String, Object> attributes) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(attributes);
+            } catch (IOException e) {
+                // Not serializable, keep the session on the heap for good
+                serializable = false;
+                failures.increment();
+                return null;
+            }
+            return bytes.toByteArray();
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> deserialize(ByteBuffer buffer) {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            try (ObjectInputStream in = new DeploymentObjectInputStream(
+                    new ByteArrayInputStream(data))) {
+                return (Map<String, Object>) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new RuntimeException(
+                        "Could not restore session " + id, e);
+            }
+        }
+    }
+}
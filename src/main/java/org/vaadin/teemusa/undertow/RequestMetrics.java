@@ -0,0 +1,194 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics of an {@link UndertowServer}: latency histograms per
+ * request type, request rate, in-flight requests and transferred bytes.
+ * Updating the metrics does not allocate or lock.
+ * 
+ * @see ServerConfiguration#setMetrics(boolean)
+ * @see UndertowServer#getRequestMetrics()
+ */
+public class RequestMetrics implements RequestMetricsMXBean {
+
+    /**
+     * Types of requests to a Vaadin deployment.
+     */
+    public enum RequestType {
+        /** Bootstrap page and any other request not matching other types. */
+        BOOTSTRAP,
+        /** Client-server communication of a UI. */
+        UIDL,
+        /** Heartbeat keeping a UI alive. */
+        HEARTBEAT,
+        /** Server push connection. */
+        PUSH,
+        /** Static resources such as themes and widgetsets. */
+        STATIC;
+
+        private static final RequestType[] VALUES = values();
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[
+            RequestType.VALUES.length];
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final Rate rate = new Rate();
+
+    /**
+     * One minute exponentially weighted moving average of an event rate,
+     * updated in five second ticks.
+     */
+    private static class Rate {
+        private static final long TICK = TimeUnit.SECONDS.toNanos(5);
+        private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+        private final LongAdder uncounted = new LongAdder();
+        private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+        private volatile double ratePerSecond;
+        private volatile boolean initialized;
+
+        private void mark() {
+            tickIfNecessary();
+            uncounted.increment();
+        }
+
+        private double get() {
+            tickIfNecessary();
+            return ratePerSecond;
+        }
+
+        private void tickIfNecessary() {
+            long oldTick = lastTick.get();
+            long age = System.nanoTime() - oldTick;
+            if (age > TICK && lastTick.compareAndSet(oldTick,
+                    oldTick + age - age % TICK)) {
+                for (long i = age / TICK; i > 0; i--) {
+                    double instant = uncounted.sumThenReset() / 5.0;
+                    if (initialized) {
+                        ratePerSecond += ALPHA * (instant - ratePerSecond);
+                    } else {
+                        ratePerSecond = instant;
+                        initialized = true;
+                    }
+                }
+            }
+        }
+    }
+
+    RequestMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the start of a request.
+     * 
+     * @param contentLength
+     *            the request content length, or {@code -1} if unknown
+     */
+    void requestStarted(long contentLength) {
+        inFlight.increment();
+        if (contentLength > 0) {
+            bytesIn.add(contentLength);
+        }
+    }
+
+    /**
+     * Records the completion of a request.
+     * 
+     * @param type
+     *            the request type
+     * @param latencyNanos
+     *            the latency in nanoseconds, or {@code -1} if unknown
+     * @param bytesSent
+     *            the response bytes sent
+     */
+    void requestCompleted(RequestType type, long latencyNanos,
+            long bytesSent) {
+        inFlight.decrement();
+        requests.increment();
+        rate.mark();
+        bytesOut.add(bytesSent);
+        if (latencyNanos >= 0) {
+            latencies[type.ordinal()].record(latencyNanos);
+        }
+    }
+
+    /**
+     * Gets the latency histogram of the given request type.
+     * 
+     * @param type
+     *            the request type
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatency(RequestType type) {
+        return latencies[type.ordinal()];
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public double getRequestRate() {
+        return rate.get();
+    }
+
+    @Override
+    public long getInFlightRequests() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (RequestType type : RequestType.VALUES) {
+            counts.put(getKey(type), getLatency(type).getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return getPercentiles(50);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return getPercentiles(99);
+    }
+
+    private Map<String, Double> getPercentiles(double percentile) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (RequestType type : RequestType.VALUES) {
+            values.put(getKey(type), getLatency(type).getPercentile(percentile,
+                    TimeUnit.MILLISECONDS));
+        }
+        return values;
+    }
+
+    static String getKey(RequestType type) {
+        return type.name().toLowerCase(Locale.ROOT);
+    }
+}
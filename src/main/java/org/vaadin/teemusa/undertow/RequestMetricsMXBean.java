@@ -0,0 +1,68 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Map;
+
+/**
+ * JMX interface of {@link RequestMetrics}. Latencies are keyed by the lower
+ * case name of the {@link RequestMetrics.RequestType}.
+ */
+public interface RequestMetricsMXBean {
+
+    /**
+     * Gets the number of completed requests.
+     * 
+     * @return the request count
+     */
+    long getRequestCount();
+
+    /**
+     * Gets the request rate as an exponentially weighted moving average over
+     * one minute.
+     * 
+     * @return requests per second
+     */
+    double getRequestRate();
+
+    /**
+     * Gets the number of requests currently being processed.
+     * 
+     * @return the in-flight request count
+     */
+    long getInFlightRequests();
+
+    /**
+     * Gets the number of request body bytes received, for requests with a
+     * known content length.
+     * 
+     * @return the received bytes
+     */
+    long getBytesIn();
+
+    /**
+     * Gets the number of response bytes sent.
+     * 
+     * @return the sent bytes
+     */
+    long getBytesOut();
+
+    /**
+     * Gets the number of completed requests per request type.
+     * 
+     * @return request counts by type
+     */
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * Gets the median latency per request type.
+     * 
+     * @return latency in milliseconds by type
+     */
+    Map<String, Double> getLatencyP50Millis();
+
+    /**
+     * Gets the 99th percentile latency per request type.
+     * 
+     * @return latency in milliseconds by type
+     */
+    Map<String, Double> getLatencyP99Millis();
+}
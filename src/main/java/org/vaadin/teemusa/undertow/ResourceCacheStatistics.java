@@ -0,0 +1,113 @@
+package org.vaadin.teemusa.undertow;
+
+/**
+ * Snapshot of the statistics of the static resource cache.
+ * 
+ * @see UndertowServer#getResourceCacheStatistics()
+ */
+public class ResourceCacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int entries;
+    private final long memoryUsed;
+    private final long maxMemory;
+
+    ResourceCacheStatistics(long hits, long misses, long evictions,
+            int entries, long memoryUsed, long maxMemory) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = entries;
+        this.memoryUsed = memoryUsed;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Gets the number of requests served from the cache.
+     * 
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of requests that had to load a resource.
+     * 
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the ratio of cache hits to all requests handled by the cache.
+     * 
+     * @return the hit rate between 0 and 1, or 0 if there have been no
+     *         requests
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Gets the number of resources evicted to stay within the memory bound.
+     * 
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of cached resources.
+     * 
+     * @return the entry count
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the memory used by the cached resources, including compressed
+     * variants.
+     * 
+     * @return the used memory in bytes
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Gets the maximum memory the cache may use.
+     * 
+     * @return the memory bound in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Combines these statistics with the statistics of another deployment.
+     * 
+     * @param other
+     *            the statistics to add
+     * @return the summed statistics
+     */
+    ResourceCacheStatistics add(ResourceCacheStatistics other) {
+        return new ResourceCacheStatistics(hits + other.hits,
+                misses + other.misses, evictions + other.evictions,
+                entries + other.entries, memoryUsed + other.memoryUsed,
+                maxMemory + other.maxMemory);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d "
+                + "entries=%d memoryUsed=%dB maxMemory=%dB", hits, misses,
+                getHitRate(), evictions, entries, memoryUsed, maxMemory);
+    }
+}
@@ -0,0 +1,186 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Helper class for creating a self-signed certificate for local HTTPS
+ * deployments. The certificate is generated with the {@code keytool} of the
+ * running Java installation and is valid for {@code localhost} and
+ * {@code 127.0.0.1}. Tests can connect to the HTTPS listener with the client
+ * context from {@link #getClientSslContext()}, which trusts the certificate.
+ */
+public class SelfSignedCertificate {
+
+    private static final String ALIAS = "undertow-launcher";
+
+    private static KeyStore keyStore;
+    private static SSLContext sslContext;
+    private static SSLContext clientSslContext;
+
+    private SelfSignedCertificate() {
+    }
+
+    /**
+     * Gets an SSL context using a self-signed certificate. The certificate is
+     * generated on the first call and shared after that.
+     * 
+     * @return SSL context with a self-signed certificate
+     */
+    public static synchronized SSLContext getSslContext() {
+        if (sslContext == null) {
+            sslContext = createSslContext(getKeyStore());
+        }
+        return sslContext;
+    }
+
+    /**
+     * Creates a new SSL context using the self-signed certificate of
+     * {@link #getSslContext()}. Servers tuning their TLS session cache use a
+     * context of their own, so that the settings of one server do not leak
+     * into the others.
+     * 
+     * @return new SSL context with the self-signed certificate
+     */
+    static synchronized SSLContext newSslContext() {
+        return createSslContext(getKeyStore());
+    }
+
+    /**
+     * Gets a client SSL context trusting the self-signed certificate of
+     * {@link #getSslContext()}. Sessions of the context are cached, so
+     * connections made with it resume their TLS sessions.
+     * 
+     * @return client SSL context trusting the self-signed certificate
+     */
+    public static synchronized SSLContext getClientSslContext() {
+        if (clientSslContext == null) {
+            clientSslContext = createClientSslContext(getKeyStore());
+        }
+        return clientSslContext;
+    }
+
+    private static KeyStore getKeyStore() {
+        if (keyStore == null) {
+            keyStore = createKeyStore();
+        }
+        return keyStore;
+    }
+
+    /**
+     * Generates a new keystore containing a self-signed certificate.
+     * 
+     * @return the keystore
+     */
+    static KeyStore createKeyStore() {
+        char[] password = getPassword();
+        File file = null;
+        try {
+            file = File.createTempFile("undertow-launcher", ".p12");
+            // keytool refuses to write into an existing empty file
+            file.delete();
+
+            Process keytool = new ProcessBuilder(getKeytool(), "-genkeypair",
+                    "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048",
+                    "-validity", "365", "-dname", "CN=localhost", "-ext",
+                    "SAN=dns:localhost,ip:127.0.0.1", "-storetype", "PKCS12",
+                    "-keystore", file.getAbsolutePath(), "-storepass",
+                    new String(password), "-keypass", new String(password))
+                            .redirectErrorStream(true).start();
+            if (!keytool.waitFor(1, TimeUnit.MINUTES)
+                    || keytool.exitValue() != 0) {
+                keytool.destroy();
+                throw new RuntimeException(
+                        "Could not generate self-signed certificate");
+            }
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream in = new FileInputStream(file)) {
+                keyStore.load(in, password);
+            }
+            return keyStore;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new RuntimeException(
+                    "Could not generate self-signed certificate", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(
+                    "Interrupted while generating self-signed certificate",
+                    e);
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Creates a TLS context serving the key in the given keystore.
+     * 
+     * @param keyStore
+     *            keystore created with {@link #createKeyStore()}
+     * @return the SSL context
+     */
+    static SSLContext createSslContext(KeyStore keyStore) {
+        try {
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory
+                    .getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, getPassword());
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagerFactory.getKeyManagers(), null, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Could not create SSL context", e);
+        }
+    }
+
+    /**
+     * Creates a client TLS context trusting only the certificate in the given
+     * keystore.
+     * 
+     * @param keyStore
+     *            keystore created with {@link #createKeyStore()}
+     * @return the client SSL context
+     */
+    static SSLContext createClientSslContext(KeyStore keyStore) {
+        try {
+            KeyStore trustStore = KeyStore.getInstance("PKCS12");
+            trustStore.load(null, null);
+            trustStore.setCertificateEntry(ALIAS,
+                    keyStore.getCertificate(ALIAS));
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory
+                    .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(trustStore);
+
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, trustManagerFactory.getTrustManagers(), null);
+            return context;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new RuntimeException("Could not create SSL context", e);
+        }
+    }
+
+    private static char[] getPassword() {
+        // The keystore only lives in memory, so a fixed password is enough
+        return ALIAS.toCharArray();
+    }
+
+    private static String getKeytool() {
+        File bin = new File(System.getProperty("java.home"), "bin");
+        File keytool = new File(bin, "keytool");
+        if (!keytool.exists()) {
+            keytool = new File(bin, "keytool.exe");
+        }
+        return keytool.getAbsolutePath();
+    }
+}
@@ -0,0 +1,1315 @@
+package org.vaadin.teemusa.undertow;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.xnio.Options;
+
+import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+
+/**
+ * Configuration for the Undertow instance created by {@link UndertowServer}.
+ * Any value that is not set falls back to the Undertow default.
+ * <p>
+ * The configuration is read when the server is started, so changes made after
+ * that have no effect on the running server.
+ * 
+ * @see UndertowLauncher#withConfiguration(ServerConfiguration)
+ * @see UndertowRule#withConfiguration(ServerConfiguration)
+ */
+public class ServerConfiguration {
+
+    private Integer ioThreads;
+    private Integer workerThreads;
+    private Integer bufferSize;
+    private Boolean directBuffers;
+    private Integer backlog;
+    private Boolean tcpNoDelay;
+    private Boolean daemonThreads;
+    private boolean http2;
+    private Integer httpsPort;
+    private SSLContext sslContext;
+    private Integer sslSessionCacheSize;
+    private Integer sslSessionTimeout;
+    private boolean compression;
+    private int compressionThreshold = 1024;
+    private Set<String> compressibleMimeTypes = new HashSet<>(Arrays.asList(
+            "text/html", "text/css", "text/plain", "text/javascript",
+            "application/javascript", "application/json", "application/xml",
+            "image/svg+xml"));
+    private boolean staticResourceCaching;
+    private long staticResourceCacheSize = 32 * 1024 * 1024;
+    private int staticResourceCacheTime = 24 * 60 * 60;
+    private boolean metrics;
+    private String metricsPath;
+    private String healthPath;
+    private String readinessPath;
+    private Path accessLogDirectory;
+    private String accessLogPattern = "common";
+    private int accessLogBufferSize = 8192;
+    private boolean offHeapSessions;
+    private long offHeapSessionMemory = 256 * 1024 * 1024;
+    private int sessionPassivationTime = 60;
+    private boolean sessionInspection;
+    private int sessionInspectionInterval = 60;
+    private int sessionInspectionSampleSize = 100;
+    private int shutdownTimeout;
+    private int maxConcurrentRequests;
+    private int maxConcurrentHeartbeatRequests = 16;
+    private int maxConcurrentStaticRequests = 32;
+    private int maxQueuedRequests = 100;
+    private int retryAfter = 1;
+    private Executor requestExecutor;
+    private boolean virtualThreads;
+    private boolean warmUp;
+    private int warmUpTimeout = 30;
+    private boolean webSockets = true;
+    private int webSocketBufferSize = 16 * 1024;
+    private boolean webSocketDirectBuffers = true;
+    private int webSocketIoThreads = 1;
+
+    /**
+     * Sets the number of IO threads. Undertow defaults to one per available
+     * processor core.
+     * 
+     * @param ioThreads
+     *            the number of IO threads
+     * @return this configuration
+     */
+    public ServerConfiguration setIoThreads(int ioThreads) {
+        this.ioThreads = requirePositive(ioThreads, "ioThreads");
+        return this;
+    }
+
+    /**
+     * Gets the number of IO threads.
+     * 
+     * @return the number of IO threads, or {@code null} if not set
+     */
+    public Integer getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Sets the number of worker threads used for blocking tasks such as
+     * servlet requests. Undertow defaults to eight per IO thread.
+     * 
+     * @param workerThreads
+     *            the number of worker threads
+     * @return this configuration
+     */
+    public ServerConfiguration setWorkerThreads(int workerThreads) {
+        this.workerThreads = requirePositive(workerThreads, "workerThreads");
+        return this;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     * 
+     * @return the number of worker threads, or {@code null} if not set
+     */
+    public Integer getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Sets the size of the buffers used for IO in bytes. Undertow picks a
+     * default based on the available memory.
+     * 
+     * @param bufferSize
+     *            the buffer size in bytes
+     * @return this configuration
+     */
+    public ServerConfiguration setBufferSize(int bufferSize) {
+        this.bufferSize = requirePositive(bufferSize, "bufferSize");
+        return this;
+    }
+
+    /**
+     * Gets the size of the IO buffers.
+     * 
+     * @return the buffer size in bytes, or {@code null} if not set
+     */
+    public Integer getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets whether IO buffers are allocated as direct buffers outside of the
+     * Java heap.
+     * 
+     * @param directBuffers
+     *            {@code true} to use direct buffers; {@code false} to use heap
+     *            buffers
+     * @return this configuration
+     */
+    public ServerConfiguration setDirectBuffers(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+        return this;
+    }
+
+    /**
+     * Gets whether IO buffers are direct buffers.
+     * 
+     * @return {@code true} for direct buffers, {@code false} for heap buffers,
+     *         or {@code null} if not set
+     */
+    public Boolean getDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * Sets the maximum length of the queue of incoming connections waiting to
+     * be accepted by the listener.
+     * 
+     * @param backlog
+     *            the accept backlog
+     * @return this configuration
+     */
+    public ServerConfiguration setBacklog(int backlog) {
+        this.backlog = requirePositive(backlog, "backlog");
+        return this;
+    }
+
+    /**
+     * Gets the accept backlog of the listener.
+     * 
+     * @return the backlog, or {@code null} if not set
+     */
+    public Integer getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Sets whether Nagle's algorithm is disabled for accepted connections.
+     * 
+     * @param tcpNoDelay
+     *            {@code true} to set {@code TCP_NODELAY} on connections
+     * @return this configuration
+     */
+    public ServerConfiguration setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Gets whether {@code TCP_NODELAY} is set on accepted connections.
+     * 
+     * @return the {@code TCP_NODELAY} setting, or {@code null} if not set
+     */
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Sets whether the IO and worker threads are daemon threads, which do not
+     * keep the JVM running after all other threads have finished.
+     * 
+     * @param daemonThreads
+     *            {@code true} to use daemon threads
+     * @return this configuration
+     */
+    public ServerConfiguration setDaemonThreads(boolean daemonThreads) {
+        this.daemonThreads = daemonThreads;
+        return this;
+    }
+
+    /**
+     * Gets whether the IO and worker threads are daemon threads.
+     * 
+     * @return the daemon thread setting, or {@code null} if not set
+     */
+    public Boolean getDaemonThreads() {
+        return daemonThreads;
+    }
+
+    /**
+     * Sets whether HTTP/2 is enabled. The plain HTTP listener then accepts
+     * {@code h2c} upgrades, and the HTTPS listener offers {@code h2} through
+     * ALPN when the Java runtime supports it. Clients that do not use HTTP/2
+     * are served with HTTP/1.1.
+     * 
+     * @param http2
+     *            {@code true} to enable HTTP/2
+     * @return this configuration
+     * @see #setHttpsPort(int)
+     */
+    public ServerConfiguration setHttp2(boolean http2) {
+        this.http2 = http2;
+        return this;
+    }
+
+    /**
+     * Gets whether HTTP/2 is enabled.
+     * 
+     * @return {@code true} if HTTP/2 is enabled
+     */
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * Sets the port of an additional HTTPS listener. Use
+     * {@link UndertowServer#ANY_PORT} to bind to any free port. Without an
+     * explicit SSL context a self-signed certificate for {@code localhost} is
+     * generated.
+     * 
+     * @param httpsPort
+     *            the HTTPS port
+     * @return this configuration
+     * @see #setSslContext(SSLContext)
+     */
+    public ServerConfiguration setHttpsPort(int httpsPort) {
+        this.httpsPort = requireNonNegative(httpsPort, "httpsPort");
+        return this;
+    }
+
+    /**
+     * Gets the port of the HTTPS listener.
+     * 
+     * @return the HTTPS port, or {@code null} if there is no HTTPS listener
+     */
+    public Integer getHttpsPort() {
+        return httpsPort;
+    }
+
+    /**
+     * Sets the SSL context of the HTTPS listener.
+     * 
+     * @param sslContext
+     *            the SSL context, or {@code null} to use a self-signed
+     *            certificate
+     * @return this configuration
+     */
+    public ServerConfiguration setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    /**
+     * Gets the SSL context of the HTTPS listener.
+     * 
+     * @return the SSL context, or {@code null} if not set
+     */
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Sets the maximum number of TLS sessions cached by the HTTPS listener
+     * for resumption. A resumed session skips the key exchange of a full
+     * handshake, which makes reconnects considerably cheaper. The setting is
+     * applied to the server session context of the SSL context. Each server
+     * using the generated self-signed certificate has a context of its own,
+     * while a context from {@link #setSslContext(SSLContext)} is changed in
+     * place. Defaults to the setting of the Java runtime.
+     * 
+     * @param sslSessionCacheSize
+     *            the maximum number of cached sessions, 0 for no limit
+     * @return this configuration
+     * @see javax.net.ssl.SSLSessionContext#setSessionCacheSize(int)
+     */
+    public ServerConfiguration setSslSessionCacheSize(
+            int sslSessionCacheSize) {
+        this.sslSessionCacheSize = requireNonNegative(sslSessionCacheSize,
+                "sslSessionCacheSize");
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of TLS sessions cached for resumption.
+     * 
+     * @return the maximum number of cached sessions, or {@code null} if not
+     *         set
+     */
+    public Integer getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    /**
+     * Sets how long TLS sessions can be resumed after they were created.
+     * Defaults to the setting of the Java runtime.
+     * 
+     * @param seconds
+     *            the session timeout in seconds, 0 for no limit
+     * @return this configuration
+     * @see #setSslSessionCacheSize(int)
+     * @see javax.net.ssl.SSLSessionContext#setSessionTimeout(int)
+     */
+    public ServerConfiguration setSslSessionTimeout(int seconds) {
+        this.sslSessionTimeout = requireNonNegative(seconds,
+                "sslSessionTimeout");
+        return this;
+    }
+
+    /**
+     * Gets how long TLS sessions can be resumed after they were created.
+     * 
+     * @return the session timeout in seconds, or {@code null} if not set
+     */
+    public Integer getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    /**
+     * Sets whether responses are compressed with gzip or deflate for clients
+     * that accept it. Static {@code /VAADIN/*} resources are compressed once
+     * and served from a cache bounded by
+     * {@link #setStaticResourceCacheSize(long)}.
+     * 
+     * @param compression
+     *            {@code true} to enable compression
+     * @return this configuration
+     */
+    public ServerConfiguration setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Gets whether responses are compressed.
+     * 
+     * @return {@code true} if compression is enabled
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the minimum response size for compression. Responses with a known
+     * smaller length are sent uncompressed. Defaults to 1024 bytes.
+     * 
+     * @param compressionThreshold
+     *            the minimum size in bytes
+     * @return this configuration
+     */
+    public ServerConfiguration setCompressionThreshold(
+            int compressionThreshold) {
+        this.compressionThreshold = requireNonNegative(compressionThreshold,
+                "compressionThreshold");
+        return this;
+    }
+
+    /**
+     * Gets the minimum response size for compression.
+     * 
+     * @return the minimum size in bytes
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the MIME types of responses that are compressed. Defaults to text,
+     * JavaScript, JSON, XML and SVG types.
+     * 
+     * @param mimeTypes
+     *            the compressible MIME types without parameters
+     * @return this configuration
+     */
+    public ServerConfiguration setCompressibleMimeTypes(String... mimeTypes) {
+        compressibleMimeTypes = new HashSet<>(Arrays.asList(mimeTypes));
+        return this;
+    }
+
+    /**
+     * Gets the MIME types of responses that are compressed.
+     * 
+     * @return the compressible MIME types
+     */
+    public Set<String> getCompressibleMimeTypes() {
+        return Collections.unmodifiableSet(compressibleMimeTypes);
+    }
+
+    /**
+     * Sets whether {@code /VAADIN/*} resources are served from an in-memory
+     * cache with strong ETags and a long {@code Cache-Control} header instead
+     * of going through the servlet.
+     * 
+     * @param staticResourceCaching
+     *            {@code true} to enable the static resource cache
+     * @return this configuration
+     */
+    public ServerConfiguration setStaticResourceCaching(
+            boolean staticResourceCaching) {
+        this.staticResourceCaching = staticResourceCaching;
+        return this;
+    }
+
+    /**
+     * Gets whether {@code /VAADIN/*} resources are served from an in-memory
+     * cache.
+     * 
+     * @return {@code true} if the static resource cache is enabled
+     */
+    public boolean isStaticResourceCaching() {
+        return staticResourceCaching;
+    }
+
+    /**
+     * Sets the maximum memory used for cached static resources, including
+     * their pre-compressed variants. Least recently used resources are evicted
+     * first. Defaults to 32 MB.
+     * 
+     * @param staticResourceCacheSize
+     *            the maximum cache size in bytes
+     * @return this configuration
+     */
+    public ServerConfiguration setStaticResourceCacheSize(
+            long staticResourceCacheSize) {
+        this.staticResourceCacheSize = requireNonNegative(
+                staticResourceCacheSize, "staticResourceCacheSize");
+        return this;
+    }
+
+    /**
+     * Gets the maximum memory used for cached static resources.
+     * 
+     * @return the maximum cache size in bytes
+     */
+    public long getStaticResourceCacheSize() {
+        return staticResourceCacheSize;
+    }
+
+    /**
+     * Sets how long browsers may cache static resources without revalidating
+     * them. Defaults to one day.
+     * 
+     * @param seconds
+     *            the {@code max-age} of static resources in seconds
+     * @return this configuration
+     */
+    public ServerConfiguration setStaticResourceCacheTime(int seconds) {
+        this.staticResourceCacheTime = requireNonNegative(seconds,
+                "staticResourceCacheTime");
+        return this;
+    }
+
+    /**
+     * Gets how long browsers may cache static resources.
+     * 
+     * @return the {@code max-age} of static resources in seconds
+     */
+    public int getStaticResourceCacheTime() {
+        return staticResourceCacheTime;
+    }
+
+    /**
+     * Sets whether request metrics are collected. The metrics are available
+     * from {@link UndertowServer#getRequestMetrics()} and as an MXBean named
+     * {@code org.vaadin.teemusa.undertow:type=RequestMetrics,port=<port>}.
+     * 
+     * @param metrics
+     *            {@code true} to collect request metrics
+     * @return this configuration
+     * @see #setMetricsPath(String)
+     */
+    public ServerConfiguration setMetrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Gets whether request metrics are collected.
+     * 
+     * @return {@code true} if request metrics are collected
+     */
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the path of an HTTP endpoint serving the request metrics in the
+     * Prometheus text format. The endpoint is served outside of the servlet
+     * container. Only used when metrics are enabled.
+     * 
+     * @param metricsPath
+     *            the path of the endpoint, for example {@code /metrics}, or
+     *            {@code null} for no endpoint
+     * @return this configuration
+     */
+    public ServerConfiguration setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+        return this;
+    }
+
+    /**
+     * Gets the path of the metrics endpoint.
+     * 
+     * @return the path, or {@code null} if there is no endpoint
+     */
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * Sets the path of a health endpoint for liveness probes. The endpoint
+     * answers {@code 200 OK} with the state of the deployments and the
+     * number of active and queued requests as JSON. It runs on the IO thread
+     * and never reaches the servlet container, so probes do not create
+     * sessions, and it is not subject to admission control.
+     * 
+     * @param healthPath
+     *            the path of the endpoint, for example {@code /health}, or
+     *            {@code null} for no endpoint
+     * @return this configuration
+     * @see #setReadinessPath(String)
+     */
+    public ServerConfiguration setHealthPath(String healthPath) {
+        this.healthPath = healthPath;
+        return this;
+    }
+
+    /**
+     * Gets the path of the health endpoint.
+     * 
+     * @return the path, or {@code null} if there is no endpoint
+     */
+    public String getHealthPath() {
+        return healthPath;
+    }
+
+    /**
+     * Sets the path of a readiness endpoint for load balancer probes. The
+     * endpoint responds like the health endpoint, but answers
+     * {@code 503 Service Unavailable} until the server is ready and all of
+     * its deployments have started.
+     * 
+     * @param readinessPath
+     *            the path of the endpoint, for example {@code /ready}, or
+     *            {@code null} for no endpoint
+     * @return this configuration
+     * @see #setHealthPath(String)
+     * @see UndertowServer#isReady()
+     */
+    public ServerConfiguration setReadinessPath(String readinessPath) {
+        this.readinessPath = readinessPath;
+        return this;
+    }
+
+    /**
+     * Gets the path of the readiness endpoint.
+     * 
+     * @return the path, or {@code null} if there is no endpoint
+     */
+    public String getReadinessPath() {
+        return readinessPath;
+    }
+
+    /**
+     * Sets the directory of the access log. Entries are formatted when a
+     * request completes and written to disk in batches by a background
+     * thread, so logging does not add file I/O to the request path. The log
+     * is rotated daily.
+     * 
+     * @param accessLogDirectory
+     *            the directory to write the access log to, or {@code null}
+     *            for no access log
+     * @return this configuration
+     * @see #setAccessLogPattern(String)
+     * @see #setAccessLogBufferSize(int)
+     */
+    public ServerConfiguration setAccessLogDirectory(Path accessLogDirectory) {
+        this.accessLogDirectory = accessLogDirectory;
+        return this;
+    }
+
+    /**
+     * Gets the directory of the access log.
+     * 
+     * @return the directory, or {@code null} if there is no access log
+     */
+    public Path getAccessLogDirectory() {
+        return accessLogDirectory;
+    }
+
+    /**
+     * Sets the format of the access log entries. Accepts {@code common},
+     * {@code combined} or a pattern of Undertow exchange attributes, such as
+     * {@code %h %t "%r" %s %b %D}. Defaults to {@code common}.
+     * 
+     * @param accessLogPattern
+     *            the access log pattern, not {@code null}
+     * @return this configuration
+     * @see io.undertow.server.handlers.accesslog.AccessLogHandler
+     */
+    public ServerConfiguration setAccessLogPattern(String accessLogPattern) {
+        this.accessLogPattern = Objects.requireNonNull(accessLogPattern,
+                "Access log pattern cannot be null");
+        return this;
+    }
+
+    /**
+     * Gets the format of the access log entries.
+     * 
+     * @return the access log pattern
+     */
+    public String getAccessLogPattern() {
+        return accessLogPattern;
+    }
+
+    /**
+     * Sets the number of access log entries buffered for the writer. Entries
+     * that do not fit in the buffer are dropped and counted rather than
+     * delaying requests. Rounded up to a power of two. Defaults to 8192.
+     * 
+     * @param accessLogBufferSize
+     *            the buffer size in entries
+     * @return this configuration
+     */
+    public ServerConfiguration setAccessLogBufferSize(
+            int accessLogBufferSize) {
+        this.accessLogBufferSize = requirePositive(accessLogBufferSize,
+                "accessLogBufferSize");
+        return this;
+    }
+
+    /**
+     * Gets the number of access log entries buffered for the writer.
+     * 
+     * @return the buffer size in entries
+     */
+    public int getAccessLogBufferSize() {
+        return accessLogBufferSize;
+    }
+
+    /**
+     * Sets whether idle sessions are serialized into off-heap memory. Sessions
+     * that have not been accessed for the
+     * {@link #setSessionPassivationTime(int) passivation time} are moved out
+     * of the Java heap, which keeps large numbers of mostly idle sessions from
+     * slowing down garbage collection. A passivated session is restored on its
+     * next access. Session attributes must be serializable.
+     * 
+     * @param offHeapSessions
+     *            {@code true} to passivate idle sessions off-heap
+     * @return this configuration
+     */
+    public ServerConfiguration setOffHeapSessions(boolean offHeapSessions) {
+        this.offHeapSessions = offHeapSessions;
+        return this;
+    }
+
+    /**
+     * Gets whether idle sessions are serialized into off-heap memory.
+     * 
+     * @return {@code true} if idle sessions are passivated off-heap
+     */
+    public boolean isOffHeapSessions() {
+        return offHeapSessions;
+    }
+
+    /**
+     * Sets the maximum off-heap memory used for passivated sessions. Idle
+     * sessions stay on the heap once the limit has been reached. Defaults to
+     * 256 MB.
+     * 
+     * @param offHeapSessionMemory
+     *            the maximum memory in bytes
+     * @return this configuration
+     */
+    public ServerConfiguration setOffHeapSessionMemory(
+            long offHeapSessionMemory) {
+        this.offHeapSessionMemory = requireNonNegative(offHeapSessionMemory,
+                "offHeapSessionMemory");
+        return this;
+    }
+
+    /**
+     * Gets the maximum off-heap memory used for passivated sessions.
+     * 
+     * @return the maximum memory in bytes
+     */
+    public long getOffHeapSessionMemory() {
+        return offHeapSessionMemory;
+    }
+
+    /**
+     * Sets how long a session must be idle before it is passivated off-heap.
+     * Defaults to one minute.
+     * 
+     * @param seconds
+     *            the idle time in seconds
+     * @return this configuration
+     */
+    public ServerConfiguration setSessionPassivationTime(int seconds) {
+        this.sessionPassivationTime = requirePositive(seconds,
+                "sessionPassivationTime");
+        return this;
+    }
+
+    /**
+     * Gets how long a session must be idle before it is passivated off-heap.
+     * 
+     * @return the idle time in seconds
+     */
+    public int getSessionPassivationTime() {
+        return sessionPassivationTime;
+    }
+
+    /**
+     * Sets whether live sessions are periodically sampled to report their
+     * approximate memory use per session and per UI class. The latest report
+     * is available from {@link UndertowServer#getSessionReport()} and as an
+     * MXBean named
+     * {@code org.vaadin.teemusa.undertow:type=SessionInspector,port=<port>}.
+     * 
+     * @param sessionInspection
+     *            {@code true} to sample sessions
+     * @return this configuration
+     */
+    public ServerConfiguration setSessionInspection(
+            boolean sessionInspection) {
+        this.sessionInspection = sessionInspection;
+        return this;
+    }
+
+    /**
+     * Gets whether live sessions are periodically sampled.
+     * 
+     * @return {@code true} if sessions are sampled
+     */
+    public boolean isSessionInspection() {
+        return sessionInspection;
+    }
+
+    /**
+     * Sets the time between session samples. Defaults to one minute.
+     * 
+     * @param seconds
+     *            the sample interval in seconds
+     * @return this configuration
+     */
+    public ServerConfiguration setSessionInspectionInterval(int seconds) {
+        this.sessionInspectionInterval = requirePositive(seconds,
+                "sessionInspectionInterval");
+        return this;
+    }
+
+    /**
+     * Gets the time between session samples.
+     * 
+     * @return the sample interval in seconds
+     */
+    public int getSessionInspectionInterval() {
+        return sessionInspectionInterval;
+    }
+
+    /**
+     * Sets the maximum number of sessions measured in one sample. Defaults to
+     * 100.
+     * 
+     * @param sampleSize
+     *            the maximum number of sessions per sample
+     * @return this configuration
+     */
+    public ServerConfiguration setSessionInspectionSampleSize(
+            int sampleSize) {
+        this.sessionInspectionSampleSize = requirePositive(sampleSize,
+                "sessionInspectionSampleSize");
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of sessions measured in one sample.
+     * 
+     * @return the maximum number of sessions per sample
+     */
+    public int getSessionInspectionSampleSize() {
+        return sessionInspectionSampleSize;
+    }
+
+    /**
+     * Sets how long stopping the server waits for in-flight requests to
+     * complete. While draining, new requests are answered with
+     * {@code 503 Service Unavailable}. Defaults to 0, which stops the server
+     * immediately.
+     * 
+     * @param seconds
+     *            the maximum time to wait for in-flight requests in seconds
+     * @return this configuration
+     */
+    public ServerConfiguration setShutdownTimeout(int seconds) {
+        this.shutdownTimeout = requireNonNegative(seconds, "shutdownTimeout");
+        return this;
+    }
+
+    /**
+     * Gets how long stopping the server waits for in-flight requests.
+     * 
+     * @return the maximum time to wait in seconds, 0 for no waiting
+     */
+    public int getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    /**
+     * Sets the maximum number of requests processed concurrently. Requests
+     * over the limit wait in a bounded queue, and requests arriving when the
+     * queue is full are rejected right away with
+     * {@code 503 Service Unavailable} and a {@code Retry-After} header.
+     * Heartbeat and static resource requests have limits of their own, so
+     * that a backlog of UIDL and bootstrap requests does not starve them.
+     * Defaults to 0, which disables admission control.
+     * 
+     * @param maxConcurrentRequests
+     *            the maximum number of concurrent requests, 0 for no limit
+     * @return this configuration
+     * @see #setMaxQueuedRequests(int)
+     */
+    public ServerConfiguration setMaxConcurrentRequests(
+            int maxConcurrentRequests) {
+        this.maxConcurrentRequests = requireNonNegative(maxConcurrentRequests,
+                "maxConcurrentRequests");
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of requests processed concurrently.
+     * 
+     * @return the maximum number of concurrent requests, 0 for no limit
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Sets the maximum number of heartbeat requests processed concurrently
+     * when admission control is enabled. Defaults to 16.
+     * 
+     * @param maxConcurrentHeartbeatRequests
+     *            the maximum number of concurrent heartbeat requests
+     * @return this configuration
+     * @see #setMaxConcurrentRequests(int)
+     */
+    public ServerConfiguration setMaxConcurrentHeartbeatRequests(
+            int maxConcurrentHeartbeatRequests) {
+        this.maxConcurrentHeartbeatRequests = requirePositive(
+                maxConcurrentHeartbeatRequests,
+                "maxConcurrentHeartbeatRequests");
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of heartbeat requests processed concurrently.
+     * 
+     * @return the maximum number of concurrent heartbeat requests
+     */
+    public int getMaxConcurrentHeartbeatRequests() {
+        return maxConcurrentHeartbeatRequests;
+    }
+
+    /**
+     * Sets the maximum number of static resource requests processed
+     * concurrently when admission control is enabled. Defaults to 32.
+     * 
+     * @param maxConcurrentStaticRequests
+     *            the maximum number of concurrent static resource requests
+     * @return this configuration
+     * @see #setMaxConcurrentRequests(int)
+     */
+    public ServerConfiguration setMaxConcurrentStaticRequests(
+            int maxConcurrentStaticRequests) {
+        this.maxConcurrentStaticRequests = requirePositive(
+                maxConcurrentStaticRequests, "maxConcurrentStaticRequests");
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of static resource requests processed
+     * concurrently.
+     * 
+     * @return the maximum number of concurrent static resource requests
+     */
+    public int getMaxConcurrentStaticRequests() {
+        return maxConcurrentStaticRequests;
+    }
+
+    /**
+     * Sets the maximum number of requests waiting for admission in each
+     * queue when admission control is enabled. Defaults to 100.
+     * 
+     * @param maxQueuedRequests
+     *            the queue size
+     * @return this configuration
+     * @see #setMaxConcurrentRequests(int)
+     */
+    public ServerConfiguration setMaxQueuedRequests(int maxQueuedRequests) {
+        this.maxQueuedRequests = requirePositive(maxQueuedRequests,
+                "maxQueuedRequests");
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of requests waiting for admission in each
+     * queue.
+     * 
+     * @return the queue size
+     */
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    /**
+     * Sets the delay suggested to clients in the {@code Retry-After} header
+     * of rejected requests. Defaults to 1 second.
+     * 
+     * @param seconds
+     *            the retry delay in seconds
+     * @return this configuration
+     */
+    public ServerConfiguration setRetryAfter(int seconds) {
+        this.retryAfter = requireNonNegative(seconds, "retryAfter");
+        return this;
+    }
+
+    /**
+     * Gets the delay suggested to clients in the {@code Retry-After} header
+     * of rejected requests.
+     * 
+     * @return the retry delay in seconds
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Sets the executor that runs servlet requests instead of the Undertow
+     * worker pool. The same executor is used for
+     * {@link javax.servlet.AsyncContext#start(Runnable)} tasks. Takes
+     * precedence over {@link #setVirtualThreads(boolean)}.
+     * 
+     * @param requestExecutor
+     *            the executor for servlet requests, or {@code null} to use the
+     *            worker pool
+     * @return this configuration
+     */
+    public ServerConfiguration setRequestExecutor(Executor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+        return this;
+    }
+
+    /**
+     * Gets the executor that runs servlet requests.
+     * 
+     * @return the executor, or {@code null} if not set
+     */
+    public Executor getRequestExecutor() {
+        return requestExecutor;
+    }
+
+    /**
+     * Sets whether each servlet request is run in a new virtual thread. This
+     * keeps blocking calls and long polling from tying up the worker pool.
+     * Each server has a virtual thread executor of its own, which is shut
+     * down when the server stops.
+     * 
+     * @param virtualThreads
+     *            {@code true} to run servlet requests in virtual threads
+     * @return this configuration
+     * @throws UnsupportedOperationException
+     *             if virtual threads are not supported by the runtime
+     * @see #isVirtualThreadsSupported()
+     */
+    public ServerConfiguration setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads && !isVirtualThreadsSupported()) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads are not supported by this Java runtime");
+        }
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Gets whether servlet requests are run in virtual threads.
+     * 
+     * @return {@code true} if virtual threads are used
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Returns whether the running Java runtime supports virtual threads.
+     * 
+     * @return {@code true} if virtual threads are available
+     */
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            // Probed without creating an executor that would need closing
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task. The
+     * caller shuts the executor down once it is no longer used.
+     * 
+     * @return the virtual thread executor
+     * @throws UnsupportedOperationException
+     *             if virtual threads are not supported by the runtime
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads are not supported by this Java runtime",
+                    e);
+        }
+    }
+
+    /**
+     * Sets whether the server warms up before it reports being ready. The
+     * servlets are then loaded on startup, and the server drives synthetic
+     * bootstrap and UIDL requests against its own deployments through the
+     * loopback interface until the UIDL latency has settled. The sessions
+     * created for the warm-up are invalidated afterwards.
+     * 
+     * @param warmUp
+     *            {@code true} to warm up on startup
+     * @return this configuration
+     * @see #setWarmUpTimeout(int)
+     * @see UndertowServer#isReady()
+     */
+    public ServerConfiguration setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+        return this;
+    }
+
+    /**
+     * Gets whether the server warms up before it reports being ready.
+     * 
+     * @return {@code true} if the server warms up on startup
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Sets the maximum time spent on the warm-up. The server reports being
+     * ready after this time even if the latency has not settled. Defaults to
+     * 30 seconds.
+     * 
+     * @param seconds
+     *            the maximum warm-up time in seconds
+     * @return this configuration
+     */
+    public ServerConfiguration setWarmUpTimeout(int seconds) {
+        this.warmUpTimeout = requirePositive(seconds, "warmUpTimeout");
+        return this;
+    }
+
+    /**
+     * Gets the maximum time spent on the warm-up.
+     * 
+     * @return the maximum warm-up time in seconds
+     */
+    public int getWarmUpTimeout() {
+        return warmUpTimeout;
+    }
+
+    /**
+     * Sets whether the deployments support WebSockets through JSR-356. With
+     * WebSockets, UIs annotated with {@code @Push} push their updates over a
+     * WebSocket connection instead of falling back to long polling, which
+     * takes an HTTP round trip for each update. Push also requires
+     * {@code vaadin-push} on the classpath. Enabled by default.
+     * <p>
+     * With WebSockets, each server starts an XNIO worker of its own next to
+     * the worker of its listener, with {@link #setWebSocketIoThreads(int)} IO
+     * threads and a pool of {@link #setWebSocketBufferSize(int)} byte
+     * buffers. Disabling WebSockets saves these threads and buffers when the
+     * UIs do not use push, for example when many servers run in the same JVM
+     * for tests.
+     * 
+     * @param webSockets
+     *            {@code true} to enable WebSockets
+     * @return this configuration
+     * @see #setWebSocketBufferSize(int)
+     * @see #setWebSocketIoThreads(int)
+     */
+    public ServerConfiguration setWebSockets(boolean webSockets) {
+        this.webSockets = webSockets;
+        return this;
+    }
+
+    /**
+     * Gets whether the deployments support WebSockets.
+     * 
+     * @return {@code true} if WebSockets are enabled
+     */
+    public boolean isWebSockets() {
+        return webSockets;
+    }
+
+    /**
+     * Sets the size of the pooled buffers WebSocket frames are read into and
+     * written from. Messages larger than one buffer span several buffers.
+     * Defaults to 16 KiB.
+     * 
+     * @param webSocketBufferSize
+     *            the buffer size in bytes
+     * @return this configuration
+     */
+    public ServerConfiguration setWebSocketBufferSize(
+            int webSocketBufferSize) {
+        this.webSocketBufferSize = requirePositive(webSocketBufferSize,
+                "webSocketBufferSize");
+        return this;
+    }
+
+    /**
+     * Gets the size of the WebSocket buffers.
+     * 
+     * @return the buffer size in bytes
+     */
+    public int getWebSocketBufferSize() {
+        return webSocketBufferSize;
+    }
+
+    /**
+     * Sets whether the WebSocket buffers are allocated as direct buffers
+     * outside of the Java heap. Defaults to {@code true}.
+     * 
+     * @param webSocketDirectBuffers
+     *            {@code true} to use direct buffers; {@code false} to use heap
+     *            buffers
+     * @return this configuration
+     */
+    public ServerConfiguration setWebSocketDirectBuffers(
+            boolean webSocketDirectBuffers) {
+        this.webSocketDirectBuffers = webSocketDirectBuffers;
+        return this;
+    }
+
+    /**
+     * Gets whether the WebSocket buffers are direct buffers.
+     * 
+     * @return {@code true} for direct buffers, {@code false} for heap buffers
+     */
+    public boolean isWebSocketDirectBuffers() {
+        return webSocketDirectBuffers;
+    }
+
+    /**
+     * Sets the number of IO threads of the worker shared by the WebSocket
+     * containers of the deployments. Connections upgraded from requests stay
+     * on the IO threads of the listener, so the worker only serves WebSocket
+     * client connections opened by the applications. Defaults to 1.
+     * 
+     * @param webSocketIoThreads
+     *            the number of IO threads
+     * @return this configuration
+     */
+    public ServerConfiguration setWebSocketIoThreads(int webSocketIoThreads) {
+        this.webSocketIoThreads = requirePositive(webSocketIoThreads,
+                "webSocketIoThreads");
+        return this;
+    }
+
+    /**
+     * Gets the number of IO threads of the WebSocket worker.
+     * 
+     * @return the number of IO threads
+     */
+    public int getWebSocketIoThreads() {
+        return webSocketIoThreads;
+    }
+
+    /**
+     * Applies this configuration to the given Undertow builder.
+     * 
+     * @param builder
+     *            the builder to configure
+     */
+    void configure(Undertow.Builder builder) {
+        if (ioThreads != null) {
+            builder.setIoThreads(ioThreads);
+        }
+        if (workerThreads != null) {
+            builder.setWorkerThreads(workerThreads);
+        }
+        if (bufferSize != null) {
+            builder.setBufferSize(bufferSize);
+        }
+        if (directBuffers != null) {
+            builder.setDirectBuffers(directBuffers);
+        }
+        if (backlog != null) {
+            builder.setSocketOption(Options.BACKLOG, backlog);
+        }
+        if (tcpNoDelay != null) {
+            builder.setSocketOption(Options.TCP_NODELAY, tcpNoDelay);
+        }
+        if (http2) {
+            builder.setServerOption(UndertowOptions.ENABLE_HTTP2, true);
+        }
+        if (metrics) {
+            // Latencies are measured from the request start time
+            builder.setServerOption(UndertowOptions.RECORD_REQUEST_START_TIME,
+                    true);
+        }
+        if (daemonThreads != null) {
+            builder.setWorkerOption(Options.THREAD_DAEMON, daemonThreads);
+        }
+    }
+
+    /**
+     * Applies the TLS session settings of this configuration to the given
+     * SSL context.
+     * 
+     * @param context
+     *            the SSL context of the HTTPS listener
+     */
+    void configure(SSLContext context) {
+        SSLSessionContext sessions = context.getServerSessionContext();
+        if (sslSessionCacheSize != null) {
+            sessions.setSessionCacheSize(sslSessionCacheSize);
+        }
+        if (sslSessionTimeout != null) {
+            sessions.setSessionTimeout(sslSessionTimeout);
+        }
+    }
+
+    private static int requireNonNegative(int value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(
+                    name + " cannot be negative, was " + value);
+        }
+        return value;
+    }
+
+    private static long requireNonNegative(long value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(
+                    name + " cannot be negative, was " + value);
+        }
+        return value;
+    }
+
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(
+                    name + " must be positive, was " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,448 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.vaadin.teemusa.undertow.SessionReport.SessionSize;
+
+import com.vaadin.server.VaadinSession;
+import com.vaadin.ui.UI;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionListener;
+import io.undertow.server.session.SessionManager;
+
+/**
+ * Periodically measures a random sample of the live sessions of the
+ * deployments of a server.
+ * The size of a session is its serialized size. Each UI is also measured on
+ * its own, without its session and the other UIs, to attribute memory to UI
+ * classes.
+ * <p>
+ * The overhead is bounded by the sample size and interval. Sessions are
+ * measured while holding the lock of their {@link VaadinSession}, and
+ * sessions that are in use or passivated off-heap are skipped instead of
+ * waited for.
+ * <p>
+ * Sessions are not read through the {@link Session} API, as reading an
+ * attribute counts as an access and would keep sampled sessions from ever
+ * expiring. The attributes are tracked with a {@link SessionListener}
+ * instead, and the attributes of off-heap sessions are read from the heap
+ * without counting as an access.
+ * 
+ * @see ServerConfiguration#setSessionInspection(boolean)
+ */
+class SessionInspector implements SessionInspectorMXBean {
+
+    private static final int LARGEST_SESSIONS = 10;
+
+    private final Map<SessionManager, SessionTracker> trackers = new ConcurrentHashMap<>();
+    private final int sampleSize;
+    private final int interval;
+    private ScheduledExecutorService sampler;
+    private volatile SessionReport report;
+
+    /**
+     * Creates a new inspector.
+     * 
+     * @param configuration
+     *            the configuration with the sample size and interval
+     */
+    SessionInspector(ServerConfiguration configuration) {
+        sampleSize = configuration.getSessionInspectionSampleSize();
+        interval = configuration.getSessionInspectionInterval();
+    }
+
+    /**
+     * Adds the session manager of a deployment to inspect.
+     * 
+     * @param sessionManager
+     *            the session manager of a started deployment
+     */
+    void addSessionManager(SessionManager sessionManager) {
+        SessionTracker tracker = new SessionTracker();
+        if (trackers.putIfAbsent(sessionManager, tracker) == null) {
+            sessionManager.registerSessionListener(tracker);
+        }
+    }
+
+    /**
+     * Removes the session manager of a deployment that is being undeployed.
+     * 
+     * @param sessionManager
+     *            the session manager to no longer inspect
+     */
+    void removeSessionManager(SessionManager sessionManager) {
+        SessionTracker tracker = trackers.remove(sessionManager);
+        if (tracker != null) {
+            sessionManager.removeSessionListener(tracker);
+        }
+    }
+
+    /**
+     * Starts sampling periodically.
+     */
+    synchronized void start() {
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "session-inspector");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            sampler.scheduleWithFixedDelay(this::sampleSafely, interval,
+                    interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops sampling.
+     */
+    synchronized void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
+    /**
+     * Gets the report of the latest sample.
+     * 
+     * @return the latest report, empty if no sample has been taken
+     */
+    Optional<SessionReport> getReport() {
+        return Optional.ofNullable(report);
+    }
+
+    @Override
+    public synchronized void sample() {
+        long start = System.nanoTime();
+        List<Map.Entry<SessionManager, String>> sessionIds = new ArrayList<>();
+        for (SessionManager sessionManager : trackers.keySet()) {
+            for (String sessionId : sessionManager.getAllSessions()) {
+                sessionIds.add(new SimpleImmutableEntry<>(sessionManager,
+                        sessionId));
+            }
+        }
+        Collections.shuffle(sessionIds, ThreadLocalRandom.current());
+
+        int sampled = 0;
+        int skipped = 0;
+        long sampledBytes = 0;
+        Map<String, Long> bytesPerUIClass = new HashMap<>();
+        Map<String, Integer> uisPerUIClass = new HashMap<>();
+        List<SessionSize> sizes = new ArrayList<>();
+        for (Map.Entry<SessionManager, String> sessionId : sessionIds
+                .subList(0, Math.min(sampleSize, sessionIds.size()))) {
+            SessionSize size = measure(sessionId.getKey(),
+                    sessionId.getValue(), bytesPerUIClass, uisPerUIClass);
+            if (size == null) {
+                skipped++;
+            } else {
+                sampled++;
+                sampledBytes += size.getBytes();
+                sizes.add(size);
+            }
+        }
+        List<SessionSize> largest = sizes.stream()
+                .sorted(Comparator.comparingLong(SessionSize::getBytes)
+                        .reversed())
+                .limit(LARGEST_SESSIONS).collect(Collectors.toList());
+
+        report = new SessionReport(Instant.now(),
+                Duration.ofNanos(System.nanoTime() - start),
+                sessionIds.size(), sampled, skipped, sampledBytes,
+                bytesPerUIClass, uisPerUIClass, largest);
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            // Keep sampling on the next round
+            Logger.getLogger(SessionInspector.class.getSimpleName())
+                    .log(Level.FINE, "Could not sample sessions", e);
+        }
+    }
+
+    private SessionSize measure(SessionManager sessionManager,
+            String sessionId, Map<String, Long> bytesPerUIClass,
+            Map<String, Integer> uisPerUIClass) {
+        SessionTracker tracker = trackers.get(sessionManager);
+        TrackedSession tracked = tracker != null
+                ? tracker.sessions.get(sessionId) : null;
+        Session session = tracked != null ? tracked.session.get() : null;
+        if (session == null) {
+            // Created before the inspector started tracking
+            return null;
+        }
+        Map<String, Object> attributes;
+        if (sessionManager instanceof OffHeapSessionManager) {
+            // Restoring a passivated session would put it back on the heap
+            attributes = ((OffHeapSessionManager) sessionManager)
+                    .getHeapAttributes(sessionId);
+        } else {
+            attributes = tracked.getAttributes();
+        }
+        if (attributes == null) {
+            return null;
+        }
+
+        List<VaadinSession> vaadinSessions = new ArrayList<>();
+        List<Lock> locks = new ArrayList<>();
+        try {
+            for (Object value : attributes.values()) {
+                if (value instanceof VaadinSession) {
+                    VaadinSession vaadinSession = (VaadinSession) value;
+                    Lock lock = vaadinSession.getLockInstance();
+                    if (lock == null || !lock.tryLock()) {
+                        // The session is in use
+                        return null;
+                    }
+                    locks.add(lock);
+                    vaadinSessions.add(vaadinSession);
+                }
+            }
+
+            long bytes = getSerializedSize(
+                    new ArrayList<>(attributes.values()), null);
+            List<String> uiClasses = new ArrayList<>();
+            Map<String, Long> uiBytes = new HashMap<>();
+            for (VaadinSession vaadinSession : vaadinSessions) {
+                for (UI ui : vaadinSession.getUIs()) {
+                    String uiClass = ui.getClass().getName();
+                    uiClasses.add(uiClass);
+                    uiBytes.merge(uiClass, getSerializedSize(ui, ui),
+                            Long::sum);
+                }
+            }
+            uiBytes.forEach(
+                    (uiClass, size) -> bytesPerUIClass.merge(uiClass, size,
+                            Long::sum));
+            uiClasses.forEach(
+                    uiClass -> uisPerUIClass.merge(uiClass, 1, Integer::sum));
+            return new SessionSize(bytes, uiClasses,
+                    session.getLastAccessedTime());
+        } catch (IOException | IllegalStateException e) {
+            // Not serializable or invalidated while measuring
+            return null;
+        } finally {
+            locks.forEach(Lock::unlock);
+        }
+    }
+
+    /**
+     * Session listener keeping track of the sessions of a session manager and
+     * the values of their attributes.
+     */
+    private static class SessionTracker implements SessionListener {
+        private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+
+        @Override
+        public void sessionCreated(Session session,
+                HttpServerExchange exchange) {
+            sessions.put(session.getId(), new TrackedSession(session));
+        }
+
+        @Override
+        public void sessionDestroyed(Session session,
+                HttpServerExchange exchange, SessionDestroyedReason reason) {
+            sessions.remove(session.getId());
+        }
+
+        @Override
+        public void attributeAdded(Session session, String name,
+                Object value) {
+            track(session).attributes.put(name, new WeakReference<>(value));
+        }
+
+        @Override
+        public void attributeUpdated(Session session, String name,
+                Object newValue, Object oldValue) {
+            track(session).attributes.put(name,
+                    new WeakReference<>(newValue));
+        }
+
+        @Override
+        public void attributeRemoved(Session session, String name,
+                Object oldValue) {
+            track(session).attributes.remove(name);
+        }
+
+        @Override
+        public void sessionIdChanged(Session session, String oldSessionId) {
+            TrackedSession tracked = sessions.remove(oldSessionId);
+            if (tracked != null) {
+                sessions.put(session.getId(), tracked);
+            }
+        }
+
+        private TrackedSession track(Session session) {
+            return sessions.computeIfAbsent(session.getId(),
+                    id -> new TrackedSession(session));
+        }
+    }
+
+    /**
+     * A session and its attribute values, weakly referenced so that tracking
+     * never keeps them alive.
+     */
+    private static class TrackedSession {
+        private final WeakReference<Session> session;
+        private final Map<String, WeakReference<Object>> attributes = new ConcurrentHashMap<>();
+
+        private TrackedSession(Session session) {
+            this.session = new WeakReference<>(session);
+        }
+
+        /**
+         * Gets the values of the attributes.
+         * 
+         * @return the attribute values by name, or {@code null} if some of
+         *         them are no longer reachable
+         */
+        private Map<String, Object> getAttributes() {
+            Map<String, Object> values = new HashMap<>();
+            for (Map.Entry<String, WeakReference<Object>> attribute : attributes
+                    .entrySet()) {
+                Object value = attribute.getValue().get();
+                if (value == null) {
+                    return null;
+                }
+                values.put(attribute.getKey(), value);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Gets the serialized size of an object.
+     * 
+     * @param object
+     *            the object to measure
+     * @param ui
+     *            the UI to measure on its own, or {@code null} to follow all
+     *            references
+     * @return the size in bytes
+     * @throws IOException
+     *             if the object is not serializable
+     */
+    private static long getSerializedSize(Object object, UI ui)
+            throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new UIObjectOutputStream(counter, ui)) {
+            out.writeObject(object);
+        }
+        return counter.count;
+    }
+
+    /**
+     * Object output stream leaving out what a UI shares with the rest of its
+     * session.
+     */
+    private static class UIObjectOutputStream extends ObjectOutputStream {
+        private final UI ui;
+
+        private UIObjectOutputStream(OutputStream out, UI ui)
+                throws IOException {
+            super(out);
+            this.ui = ui;
+            enableReplaceObject(ui != null);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof VaadinSession
+                    || obj instanceof UI && obj != ui) {
+                return null;
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Output stream discarding the data and counting its length.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    @Override
+    public String getLastSampleTime() {
+        return getReport().map(r -> r.getTime().toString()).orElse(null);
+    }
+
+    @Override
+    public long getSampleDurationMillis() {
+        return getReport().map(r -> r.getSampleDuration().toMillis())
+                .orElse(0L);
+    }
+
+    @Override
+    public int getSessions() {
+        return getReport().map(SessionReport::getSessions).orElse(0);
+    }
+
+    @Override
+    public int getSampledSessions() {
+        return getReport().map(SessionReport::getSampledSessions).orElse(0);
+    }
+
+    @Override
+    public long getSampledBytes() {
+        return getReport().map(SessionReport::getSampledBytes).orElse(0L);
+    }
+
+    @Override
+    public long getEstimatedTotalBytes() {
+        return getReport().map(SessionReport::getEstimatedTotalBytes)
+                .orElse(0L);
+    }
+
+    @Override
+    public Map<String, Long> getBytesPerUIClass() {
+        return getReport().map(SessionReport::getBytesPerUIClass)
+                .orElse(Collections.emptyMap());
+    }
+
+    @Override
+    public List<String> getLargestSessions() {
+        return getReport()
+                .map(r -> r.getLargestSessions().stream()
+                        .map(SessionSize::toString)
+                        .collect(Collectors.toList()))
+                .orElse(Collections.emptyList());
+    }
+}
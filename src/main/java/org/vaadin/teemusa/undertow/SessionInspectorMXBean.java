@@ -0,0 +1,74 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX interface of the session inspector. All values are from the latest
+ * sample and are zero or empty until the first sample has been taken.
+ * 
+ * @see SessionReport
+ */
+public interface SessionInspectorMXBean {
+
+    /**
+     * Gets the time of the latest sample in ISO-8601 format.
+     * 
+     * @return the sample time, or {@code null} if no sample has been taken
+     */
+    String getLastSampleTime();
+
+    /**
+     * Gets how long taking the latest sample took.
+     * 
+     * @return the sample duration in milliseconds
+     */
+    long getSampleDurationMillis();
+
+    /**
+     * Gets the number of live sessions.
+     * 
+     * @return the session count
+     */
+    int getSessions();
+
+    /**
+     * Gets the number of sessions measured in the sample.
+     * 
+     * @return the sampled session count
+     */
+    int getSampledSessions();
+
+    /**
+     * Gets the total size of the sampled sessions.
+     * 
+     * @return the size in bytes
+     */
+    long getSampledBytes();
+
+    /**
+     * Gets the estimated total size of all sessions.
+     * 
+     * @return the estimated size in bytes
+     */
+    long getEstimatedTotalBytes();
+
+    /**
+     * Gets the total size of the sampled UIs by UI class.
+     * 
+     * @return the sizes in bytes keyed by UI class name
+     */
+    Map<String, Long> getBytesPerUIClass();
+
+    /**
+     * Gets descriptions of the largest sampled sessions, largest first.
+     * 
+     * @return the largest sessions
+     */
+    List<String> getLargestSessions();
+
+    /**
+     * Takes a new sample immediately.
+     */
+    void sample();
+}
@@ -0,0 +1,195 @@
+package org.vaadin.teemusa.undertow;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of sampling the live sessions of a deployment. Sizes are the
+ * serialized sizes of the sessions and their UIs, which approximate the heap
+ * they retain.
+ * 
+ * @see UndertowServer#getSessionReport()
+ */
+public class SessionReport {
+
+    /**
+     * Size of one sampled session.
+     */
+    public static class SessionSize {
+
+        private final long bytes;
+        private final List<String> uiClasses;
+        private final long lastAccessedTime;
+
+        SessionSize(long bytes, List<String> uiClasses,
+                long lastAccessedTime) {
+            this.bytes = bytes;
+            this.uiClasses = Collections.unmodifiableList(uiClasses);
+            this.lastAccessedTime = lastAccessedTime;
+        }
+
+        /**
+         * Gets the serialized size of the session.
+         * 
+         * @return the size in bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gets the classes of the UIs in the session, one entry per UI.
+         * 
+         * @return the UI class names
+         */
+        public List<String> getUIClasses() {
+            return uiClasses;
+        }
+
+        /**
+         * Gets the time the session was last accessed.
+         * 
+         * @return the last access time in milliseconds since the epoch
+         */
+        public long getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        @Override
+        public String toString() {
+            return "bytes=" + bytes + " uis=" + uiClasses + " lastAccessed="
+                    + Instant.ofEpochMilli(lastAccessedTime);
+        }
+    }
+
+    private final Instant time;
+    private final Duration sampleDuration;
+    private final int sessions;
+    private final int sampledSessions;
+    private final int skippedSessions;
+    private final long sampledBytes;
+    private final Map<String, Long> bytesPerUIClass;
+    private final Map<String, Integer> uisPerUIClass;
+    private final List<SessionSize> largestSessions;
+
+    SessionReport(Instant time, Duration sampleDuration, int sessions,
+            int sampledSessions, int skippedSessions, long sampledBytes,
+            Map<String, Long> bytesPerUIClass,
+            Map<String, Integer> uisPerUIClass,
+            List<SessionSize> largestSessions) {
+        this.time = time;
+        this.sampleDuration = sampleDuration;
+        this.sessions = sessions;
+        this.sampledSessions = sampledSessions;
+        this.skippedSessions = skippedSessions;
+        this.sampledBytes = sampledBytes;
+        this.bytesPerUIClass = Collections.unmodifiableMap(bytesPerUIClass);
+        this.uisPerUIClass = Collections.unmodifiableMap(uisPerUIClass);
+        this.largestSessions = Collections.unmodifiableList(largestSessions);
+    }
+
+    /**
+     * Gets the time the sample was taken.
+     * 
+     * @return the sample time
+     */
+    public Instant getTime() {
+        return time;
+    }
+
+    /**
+     * Gets how long taking the sample took.
+     * 
+     * @return the sample duration
+     */
+    public Duration getSampleDuration() {
+        return sampleDuration;
+    }
+
+    /**
+     * Gets the number of live sessions when the sample was taken.
+     * 
+     * @return the session count
+     */
+    public int getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Gets the number of sessions that were measured.
+     * 
+     * @return the sampled session count
+     */
+    public int getSampledSessions() {
+        return sampledSessions;
+    }
+
+    /**
+     * Gets the number of sessions that were picked for the sample but skipped
+     * because they were in use or passivated.
+     * 
+     * @return the skipped session count
+     */
+    public int getSkippedSessions() {
+        return skippedSessions;
+    }
+
+    /**
+     * Gets the total size of the sampled sessions.
+     * 
+     * @return the size in bytes
+     */
+    public long getSampledBytes() {
+        return sampledBytes;
+    }
+
+    /**
+     * Gets the estimated total size of all sessions, extrapolated from the
+     * sampled sessions.
+     * 
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedTotalBytes() {
+        return sampledSessions == 0 ? 0
+                : sampledBytes * sessions / sampledSessions;
+    }
+
+    /**
+     * Gets the total size of the sampled UIs by UI class. The size of a UI
+     * does not include its session or the other UIs of the session.
+     * 
+     * @return the sizes in bytes keyed by UI class name
+     */
+    public Map<String, Long> getBytesPerUIClass() {
+        return bytesPerUIClass;
+    }
+
+    /**
+     * Gets the number of sampled UIs by UI class.
+     * 
+     * @return the UI counts keyed by UI class name
+     */
+    public Map<String, Integer> getUIsPerUIClass() {
+        return uisPerUIClass;
+    }
+
+    /**
+     * Gets the largest sampled sessions, largest first.
+     * 
+     * @return the largest sessions
+     */
+    public List<SessionSize> getLargestSessions() {
+        return largestSessions;
+    }
+
+    @Override
+    public String toString() {
+        return "time=" + time + " sessions=" + sessions + " sampled="
+                + sampledSessions + " skipped=" + skippedSessions
+                + " sampledBytes=" + sampledBytes + " estimatedTotalBytes="
+                + getEstimatedTotalBytes() + " perUIClass=" + bytesPerUIClass;
+    }
+}
@@ -0,0 +1,116 @@
+package org.vaadin.teemusa.undertow;
+
+/**
+ * Snapshot of the statistics of the off-heap session store.
+ * 
+ * @see UndertowServer#getSessionStoreStatistics()
+ */
+public class SessionStoreStatistics {
+
+    private final int sessions;
+    private final int passivatedSessions;
+    private final long memoryUsed;
+    private final long maxMemory;
+    private final long passivations;
+    private final long activations;
+    private final long failures;
+
+    SessionStoreStatistics(int sessions, int passivatedSessions,
+            long memoryUsed, long maxMemory, long passivations,
+            long activations, long failures) {
+        this.sessions = sessions;
+        this.passivatedSessions = passivatedSessions;
+        this.memoryUsed = memoryUsed;
+        this.maxMemory = maxMemory;
+        this.passivations = passivations;
+        this.activations = activations;
+        this.failures = failures;
+    }
+
+    /**
+     * Gets the number of sessions, including passivated ones.
+     * 
+     * @return the session count
+     */
+    public int getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Gets the number of sessions currently stored off-heap.
+     * 
+     * @return the passivated session count
+     */
+    public int getPassivatedSessions() {
+        return passivatedSessions;
+    }
+
+    /**
+     * Gets the off-heap memory used by passivated sessions.
+     * 
+     * @return the used memory in bytes
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Gets the maximum off-heap memory passivated sessions may use.
+     * 
+     * @return the memory bound in bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Gets the number of times a session has been moved off-heap.
+     * 
+     * @return the passivation count
+     */
+    public long getPassivations() {
+        return passivations;
+    }
+
+    /**
+     * Gets the number of times a passivated session has been restored.
+     * 
+     * @return the activation count
+     */
+    public long getActivations() {
+        return activations;
+    }
+
+    /**
+     * Gets the number of sessions that could not be passivated because their
+     * attributes are not serializable.
+     * 
+     * @return the failure count
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Combines these statistics with the statistics of another deployment.
+     * 
+     * @param other
+     *            the statistics to add
+     * @return the summed statistics
+     */
+    SessionStoreStatistics add(SessionStoreStatistics other) {
+        return new SessionStoreStatistics(sessions + other.sessions,
+                passivatedSessions + other.passivatedSessions,
+                memoryUsed + other.memoryUsed, maxMemory + other.maxMemory,
+                passivations + other.passivations,
+                activations + other.activations, failures + other.failures);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sessions=%d passivated=%d memoryUsed=%dB "
+                + "maxMemory=%dB passivations=%d activations=%d failures=%d",
+                sessions, passivatedSessions, memoryUsed, maxMemory,
+                passivations, activations, failures);
+    }
+}
@@ -0,0 +1,116 @@
+package org.vaadin.teemusa.undertow;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Durations of the phases of starting an {@link UndertowServer}. Hostname
+ * resolution, deployment and the listener bind run in parallel, so the total
+ * startup time is usually less than the sum of the phases. The phases
+ * {@link Phase#INIT}, {@link Phase#DEPLOY} and {@link Phase#START} run once
+ * for each deployment, so their durations add up those of all deployments.
+ * 
+ * @see UndertowServer#getStartupTimings()
+ */
+public class StartupTimings {
+
+    /**
+     * Phases of server startup.
+     */
+    public enum Phase {
+        /** Creating the deployment configuration. */
+        INIT,
+        /** Finding out the hostname the server is accessible from. */
+        HOSTNAME,
+        /** Deploying the servlet deployment. */
+        DEPLOY,
+        /** Starting the servlet deployment. */
+        START,
+        /** Building the server and binding the listeners. */
+        BIND,
+        /** Driving synthetic load until the latency has settled. */
+        WARMUP;
+    }
+
+    private final Map<Phase, Duration> durations = new EnumMap<>(Phase.class);
+    private Duration total;
+
+    /**
+     * Records the duration of a phase that started at the given time. The
+     * duration is added to the earlier runs of the same phase.
+     * 
+     * @param phase
+     *            the finished phase
+     * @param startNanos
+     *            the {@link System#nanoTime()} when the phase started
+     */
+    synchronized void record(Phase phase, long startNanos) {
+        durations.merge(phase, Duration.ofNanos(System.nanoTime() - startNanos),
+                Duration::plus);
+    }
+
+    /**
+     * Clears the timings of a previous startup before the server is started
+     * again. The deployments are only created once, so {@link Phase#INIT} is
+     * kept.
+     */
+    synchronized void reset() {
+        durations.keySet().retainAll(EnumSet.of(Phase.INIT));
+        total = null;
+    }
+
+    /**
+     * Records the total startup time for a startup that began at the given
+     * time.
+     * 
+     * @param startNanos
+     *            the {@link System#nanoTime()} when startup began
+     */
+    synchronized void recordTotal(long startNanos) {
+        total = Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the duration of the given phase.
+     * 
+     * @param phase
+     *            the phase
+     * @return the duration, empty if the phase has not been run
+     */
+    public synchronized Optional<Duration> getDuration(Phase phase) {
+        return Optional.ofNullable(durations.get(phase));
+    }
+
+    /**
+     * Gets the wall-clock time of the latest startup from the start call until
+     * the server was ready.
+     * 
+     * @return the total startup time, empty if the server has not started
+     */
+    public synchronized Optional<Duration> getTotal() {
+        return Optional.ofNullable(total);
+    }
+
+    /**
+     * Returns the timings as space separated {@code key=value} pairs in
+     * milliseconds, for example {@code init=1ms hostname=8ms deploy=312ms
+     * start=95ms bind=21ms total=410ms}.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Phase, Duration> entry : durations.entrySet()) {
+            builder.append(entry.getKey().name().toLowerCase(Locale.ROOT))
+                    .append('=').append(entry.getValue().toMillis())
+                    .append("ms ");
+        }
+        if (total != null) {
+            builder.append("total=").append(total.toMillis()).append("ms");
+        }
+        return builder.toString().trim();
+    }
+}
@@ -0,0 +1,428 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.MimeMappings;
+import io.undertow.util.StatusCodes;
+
+/**
+ * Handler serving {@code /VAADIN/*} resources from the classpath through a
+ * bounded in-memory cache. Cached resources are kept in direct buffers and
+ * written to the connection without copying. Responses carry a strong ETag,
+ * and conditional requests are answered with {@code 304 Not Modified}.
+ * <p>
+ * When compression is enabled, compressed variants are cached as well so that
+ * widgetsets and themes are compressed only once. Resources smaller than the
+ * compression threshold are always sent uncompressed. Least recently used
+ * resources are evicted first. Requests that cannot be served from this
+ * handler are passed to the next handler.
+ */
+class StaticResourceHandler implements HttpHandler {
+
+    private static final String PREFIX = "/VAADIN/";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    private final HttpHandler next;
+    private final ClassLoader classLoader;
+    private final boolean caching;
+    private final boolean compression;
+    private final Set<String> compressibleMimeTypes;
+    private final int compressionThreshold;
+    private final long maxCacheSize;
+    private final String cacheControl;
+
+    private final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f,
+            true);
+    private long cacheSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compressedHits = new LongAdder();
+    private final LongAdder compressions = new LongAdder();
+    private final LongAdder originalBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+
+    /**
+     * Immutable cache entry with the representations of one resource.
+     */
+    private static class Entry {
+        private final String contentType;
+        private final String etag;
+        private final int length;
+        private final ByteBuffer identity;
+        private final ByteBuffer gzip;
+        private final ByteBuffer deflate;
+
+        private Entry(String contentType, String etag, int length,
+                ByteBuffer identity, ByteBuffer gzip, ByteBuffer deflate) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.length = length;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.deflate = deflate;
+        }
+
+        private ByteBuffer get(String encoding) {
+            if (encoding == null) {
+                return identity;
+            }
+            return GZIP.equals(encoding) ? gzip : deflate;
+        }
+
+        private Entry with(String encoding, ByteBuffer data) {
+            if (encoding == null) {
+                return new Entry(contentType, etag, length, data, gzip,
+                        deflate);
+            } else if (GZIP.equals(encoding)) {
+                return new Entry(contentType, etag, length, identity, data,
+                        deflate);
+            }
+            return new Entry(contentType, etag, length, identity, gzip,
+                    data);
+        }
+
+        private long size() {
+            return capacity(identity) + capacity(gzip) + capacity(deflate);
+        }
+
+        private static long capacity(ByteBuffer buffer) {
+            return buffer != null ? buffer.capacity() : 0;
+        }
+    }
+
+    /**
+     * Creates a new static resource handler.
+     * 
+     * @param next
+     *            the handler for requests not served from this handler
+     * @param classLoader
+     *            the classloader to load resources from
+     * @param configuration
+     *            the configuration with the caching and compression settings
+     */
+    StaticResourceHandler(HttpHandler next, ClassLoader classLoader,
+            ServerConfiguration configuration) {
+        this.next = next;
+        this.classLoader = classLoader;
+        this.caching = configuration.isStaticResourceCaching();
+        this.compression = configuration.isCompression();
+        this.compressibleMimeTypes = configuration.getCompressibleMimeTypes();
+        this.compressionThreshold = configuration.getCompressionThreshold();
+        this.maxCacheSize = configuration.getStaticResourceCacheSize();
+        this.cacheControl = "public, max-age="
+                + configuration.getStaticResourceCacheTime();
+    }
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        String path = exchange.getRelativePath();
+        String contentType = isServable(exchange) ? getContentType(path)
+                : null;
+        if (contentType == null) {
+            next.handleRequest(exchange);
+            return;
+        }
+        String encoding = compression
+                && compressibleMimeTypes.contains(contentType)
+                        ? getEncoding(exchange)
+                        : null;
+        Entry entry = get(path);
+        if (entry != null && entry.length < compressionThreshold) {
+            encoding = null;
+        }
+        if (!caching && encoding == null) {
+            next.handleRequest(exchange);
+            return;
+        }
+
+        if (entry != null && entry.get(encoding) != null) {
+            hits.increment();
+            if (encoding != null) {
+                compressedHits.increment();
+            }
+            send(exchange, entry, encoding);
+            return;
+        }
+
+        // Loading and compressing the resource blocks
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+
+        misses.increment();
+        entry = load(path, contentType, encoding, entry);
+        if (entry == null) {
+            next.handleRequest(exchange);
+            return;
+        }
+        if (entry.length < compressionThreshold) {
+            encoding = null;
+        }
+        put(path, entry);
+        if (entry.get(encoding) == null) {
+            // Too small to compress and not cached
+            next.handleRequest(exchange);
+            return;
+        }
+        send(exchange, entry, encoding);
+    }
+
+    private static boolean isServable(HttpServerExchange exchange) {
+        String path = exchange.getRelativePath();
+        return (Methods.GET.equals(exchange.getRequestMethod())
+                || Methods.HEAD.equals(exchange.getRequestMethod()))
+                && path.startsWith(PREFIX) && !path.endsWith("/")
+                && !path.contains("..") && !path.contains("/./");
+    }
+
+    private static String getContentType(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return null;
+        }
+        return MimeMappings.DEFAULT.getMimeType(path.substring(dot + 1));
+    }
+
+    /**
+     * Chooses the encoding with the highest quality value the client accepts.
+     * Codings that are not listed get the quality of {@code *}, if any, and
+     * gzip is preferred when both are equally acceptable.
+     */
+    private static String getEncoding(HttpServerExchange exchange) {
+        HeaderValues headers = exchange.getRequestHeaders()
+                .get(Headers.ACCEPT_ENCODING);
+        if (headers == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String header : headers) {
+            for (String value : header.split(",")) {
+                String[] parts = value.split(";");
+                String name = parts[0].trim();
+                if (GZIP.equalsIgnoreCase(name)) {
+                    gzip = getQuality(parts);
+                } else if (DEFLATE.equalsIgnoreCase(name)) {
+                    deflate = getQuality(parts);
+                } else if ("*".equals(name)) {
+                    any = getQuality(parts);
+                }
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                try {
+                    double quality = Double
+                            .parseDouble(parameter.substring(2).trim());
+                    return quality >= 0 && quality <= 1 ? quality : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private Entry load(String path, String contentType, String encoding,
+            Entry cached) throws IOException {
+        URL resource = classLoader.getResource(path.substring(1));
+        if (resource == null) {
+            return null;
+        }
+
+        byte[] data;
+        try (InputStream in = resource.openStream()) {
+            data = readFully(in);
+        }
+
+        Entry entry = cached;
+        if (entry == null) {
+            entry = new Entry(contentType, createETag(data), data.length,
+                    caching ? toDirectBuffer(data) : null, null, null);
+        } else if (caching && entry.identity == null) {
+            entry = entry.with(null, toDirectBuffer(data));
+        }
+        if (encoding != null && data.length >= compressionThreshold) {
+            entry = entry.with(encoding, compress(data, encoding));
+        }
+        return entry;
+    }
+
+    private ByteBuffer compress(byte[] data, String encoding)
+            throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = GZIP.equals(encoding)
+                ? new GZIPOutputStream(bytes)
+                : new DeflaterOutputStream(bytes)) {
+            out.write(data);
+        }
+        compressionNanos.add(System.nanoTime() - start);
+        compressions.increment();
+        originalBytes.add(data.length);
+        compressedBytes.add(bytes.size());
+        return toDirectBuffer(bytes.toByteArray());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer toDirectBuffer(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static String createETag(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+            StringBuilder etag = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                etag.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return etag.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 not available", e);
+        }
+    }
+
+    private void send(HttpServerExchange exchange, Entry entry,
+            String encoding) {
+        HeaderMap headers = exchange.getResponseHeaders();
+        // Each representation needs its own strong ETag
+        String etag = '"' + entry.etag
+                + (encoding != null ? "-" + encoding : "") + '"';
+        headers.put(Headers.ETAG, etag);
+        if (caching) {
+            headers.put(Headers.CACHE_CONTROL, cacheControl);
+        }
+        if (compression && compressibleMimeTypes.contains(entry.contentType)) {
+            headers.add(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+        }
+        if (isNotModified(exchange, etag)) {
+            exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+            exchange.endExchange();
+            return;
+        }
+
+        ByteBuffer data = entry.get(encoding).duplicate();
+        headers.put(Headers.CONTENT_TYPE, entry.contentType);
+        if (encoding != null) {
+            headers.put(Headers.CONTENT_ENCODING, encoding);
+        }
+        headers.put(Headers.CONTENT_LENGTH, data.remaining());
+        if (Methods.HEAD.equals(exchange.getRequestMethod())) {
+            exchange.endExchange();
+        } else {
+            exchange.getResponseSender().send(data);
+        }
+    }
+
+    private static boolean isNotModified(HttpServerExchange exchange,
+            String etag) {
+        HeaderValues headers = exchange.getRequestHeaders()
+                .get(Headers.IF_NONE_MATCH);
+        if (headers == null) {
+            return false;
+        }
+        for (String header : headers) {
+            for (String value : header.split(",")) {
+                String tag = value.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private synchronized Entry get(String path) {
+        return cache.get(path);
+    }
+
+    private synchronized void put(String path, Entry entry) {
+        if (entry.size() > maxCacheSize) {
+            return;
+        }
+        Entry old = cache.put(path, entry);
+        cacheSize += entry.size() - (old != null ? old.size() : 0);
+        Iterator<Entry> eldest = cache.values().iterator();
+        while (cacheSize > maxCacheSize) {
+            cacheSize -= eldest.next().size();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the cache statistics.
+     * 
+     * @return the cache statistics
+     */
+    synchronized ResourceCacheStatistics getCacheStatistics() {
+        return new ResourceCacheStatistics(hits.sum(), misses.sum(),
+                evictions.sum(), cache.size(), cacheSize, maxCacheSize);
+    }
+
+    /**
+     * Gets a snapshot of the compression statistics.
+     * 
+     * @return the compression statistics
+     */
+    CompressionStatistics getCompressionStatistics() {
+        return new CompressionStatistics(compressedHits.sum(),
+                compressions.sum(), originalBytes.sum(), compressedBytes.sum(),
+                compressionNanos.sum());
+    }
+}
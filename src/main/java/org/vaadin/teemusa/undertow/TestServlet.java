@@ -9,11 +9,13 @@ import com.vaadin.server.VaadinServlet;
 
 /**
  * Annotation to define the used {@link VaadinServlet} for a test class. Used in
- * combination with {@link UndertowRule#create()}.
+ * combination with {@link UndertowRule#create()} or
+ * {@link UndertowExtension}.
  * <p>
  * Mutually exclusive with {@link TestUI}.
  * 
  * @see UndertowRule
+ * @see UndertowExtension
  * @see TestUI
  */
 @Target({ ElementType.TYPE })
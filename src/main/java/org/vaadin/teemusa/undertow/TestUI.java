@@ -10,11 +10,13 @@ import com.vaadin.ui.UI;
 
 /**
  * Annotation to define the used {@link UI} for a test class. Used in
- * combination with {@link UndertowRule#create()}.
+ * combination with {@link UndertowRule#create()} or
+ * {@link UndertowExtension}.
  * <p>
  * Mutually exclusive with {@link TestServlet}.
  * 
  * @see UndertowRule
+ * @see UndertowExtension
  * @see TestServlet
  */
 @Target({ ElementType.TYPE })
@@ -0,0 +1,261 @@
+package org.vaadin.teemusa.undertow;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonType;
+import elemental.json.JsonValue;
+
+/**
+ * Client side state of one UI following the Vaadin client-server protocol.
+ * Creates the request bodies a browser would send and tracks the
+ * synchronization state from the responses. Transport is left to the caller,
+ * like {@link LoadDriver} does with non-blocking requests.
+ */
+public class UidlSession {
+
+    private static final String UIDL_PREFIX = "for(;;);";
+    private static final String BUTTON = "com.vaadin.ui.Button";
+    private static final String BUTTON_RPC = "com.vaadin.shared.ui.button."
+            + "ButtonServerRpc";
+
+    private final int uiId;
+    private final String csrfToken;
+    private final String buttonId;
+    private final String pushId;
+    private int syncId;
+    private int clientId;
+
+    private UidlSession(int uiId, JsonObject uidl) throws IOException {
+        this.uiId = uiId;
+        csrfToken = uidl.getString("Vaadin-Security-Key");
+        buttonId = findConnector(uidl, BUTTON);
+        // Only sent to UIs with push enabled
+        pushId = uidl.hasKey("Vaadin-Push-ID")
+                ? uidl.getString("Vaadin-Push-ID")
+                : null;
+        update(uidl);
+    }
+
+    /**
+     * Gets the path of the request initializing a UI, relative to the
+     * deployment.
+     * 
+     * @return the relative path of the init request
+     */
+    public static String getInitPath() {
+        // Browsers add a timestamp to prevent caching
+        return "?v-" + System.currentTimeMillis();
+    }
+
+    /**
+     * Creates the form encoded body of the request initializing a UI,
+     * describing a full HD browser window in UTC.
+     * 
+     * @param location
+     *            the URL of the page the UI is opened at
+     * @return the request body
+     */
+    public static String getInitRequest(String location) {
+        Map<String, String> details = new LinkedHashMap<>();
+        details.put("v-browserDetails", "1");
+        details.put("theme", "valo");
+        details.put("v-appId", "ROOT");
+        details.put("v-sh", "1080");
+        details.put("v-sw", "1920");
+        details.put("v-cw", "1920");
+        details.put("v-ch", "1080");
+        details.put("v-vw", "1920");
+        details.put("v-vh", "1080");
+        details.put("v-curdate", "" + System.currentTimeMillis());
+        details.put("v-tzo", "0");
+        details.put("v-dstd", "0");
+        details.put("v-rtzo", "0");
+        details.put("v-dston", "false");
+        details.put("v-tzid", "UTC");
+        details.put("v-loc", location);
+        details.put("v-wn", "ROOT-" + System.nanoTime());
+        details.put("v-td", "1");
+        details.put("v-pr", "1");
+        return details.entrySet().stream()
+                .map(e -> encode(e.getKey()) + "=" + encode(e.getValue()))
+                .collect(Collectors.joining("&"));
+    }
+
+    /**
+     * Creates the session from the response to the init request.
+     * 
+     * @param response
+     *            the response body of the init request
+     * @return the session of the initialized UI
+     * @throws IOException
+     *             if the response is not a valid UI initialization
+     */
+    public static UidlSession init(String response) throws IOException {
+        try {
+            JsonObject init = Json.parse(stripPrefix(response));
+            // The initial UIDL is embedded in the response as a string
+            return new UidlSession((int) init.getNumber("v-uiId"),
+                    Json.parse(init.getString("uidl")));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid init response: " + response, e);
+        }
+    }
+
+    /**
+     * Gets the path of UIDL requests, relative to the deployment.
+     * 
+     * @return the relative path of UIDL requests
+     */
+    public String getUidlPath() {
+        return "UIDL/?v-uiId=" + uiId;
+    }
+
+    /**
+     * Gets the push id the server expects from the push connection of the
+     * UI.
+     * 
+     * @return the push id, or {@code null} if push is not enabled for the UI
+     */
+    public String getPushId() {
+        return pushId;
+    }
+
+    /**
+     * Gets the path of the push connection, relative to the deployment.
+     * 
+     * @param transport
+     *            the Atmosphere transport, such as {@code websocket} or
+     *            {@code long-polling}
+     * @param trackingId
+     *            the tracking id assigned by the server, or {@code "0"} when
+     *            connecting for the first time
+     * @return the relative path of the push connection
+     * @throws IllegalStateException
+     *             if push is not enabled for the UI
+     */
+    public String getPushPath(String transport, String trackingId) {
+        if (pushId == null) {
+            throw new IllegalStateException("Push is not enabled for the UI");
+        }
+        return "PUSH?v-uiId=" + uiId + "&v-pushId=" + encode(pushId)
+                + "&X-Atmosphere-tracking-id=" + encode(trackingId)
+                + "&X-Atmosphere-Framework=2.3.2.vaadin1-javascript"
+                + "&X-Atmosphere-Transport=" + encode(transport)
+                + "&X-atmo-protocol=true"
+                + "&Content-Type=" + encode("application/json; charset=UTF-8");
+    }
+
+    /**
+     * Creates the body of a UIDL request clicking the first button of the UI.
+     * 
+     * @return the JSON request body
+     */
+    public String createClick() {
+        JsonObject details = Json.createObject();
+        details.put("button", "LEFT");
+        details.put("clientX", 0);
+        details.put("clientY", 0);
+        details.put("altKey", false);
+        details.put("ctrlKey", false);
+        details.put("metaKey", false);
+        details.put("shiftKey", false);
+        details.put("type", 1);
+        details.put("relativeX", 0);
+        details.put("relativeY", 0);
+
+        JsonArray parameters = Json.createArray();
+        parameters.set(0, details);
+        JsonArray invocation = Json.createArray();
+        invocation.set(0, buttonId);
+        invocation.set(1, BUTTON_RPC);
+        invocation.set(2, "click");
+        invocation.set(3, parameters);
+        JsonArray rpc = Json.createArray();
+        rpc.set(0, invocation);
+
+        JsonObject request = Json.createObject();
+        request.put("csrfToken", csrfToken);
+        request.put("rpc", rpc);
+        request.put("syncId", syncId);
+        request.put("clientId", clientId++);
+        return request.toJson();
+    }
+
+    /**
+     * Updates the synchronization state from a UIDL response.
+     * 
+     * @param response
+     *            the response body of a UIDL request
+     * @throws IOException
+     *             if the response is invalid or reports an error
+     */
+    public void update(String response) throws IOException {
+        try {
+            JsonArray uidl = Json.parse(stripPrefix(response));
+            update(uidl.getObject(0));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid UIDL response: " + response, e);
+        }
+    }
+
+    private void update(JsonObject uidl) throws IOException {
+        if (uidl.hasKey("syncId")) {
+            syncId = (int) uidl.getNumber("syncId");
+        }
+        if (uidl.hasKey("meta") && uidl.getObject("meta").hasKey("appError")) {
+            throw new IOException("Application error: " + uidl.toJson());
+        }
+    }
+
+    private static String stripPrefix(String response) {
+        // Protects against JSON hijacking, not part of the JSON
+        return response.startsWith(UIDL_PREFIX)
+                ? response.substring(UIDL_PREFIX.length())
+                : response;
+    }
+
+    private static String findConnector(JsonObject uidl, String className)
+            throws IOException {
+        JsonObject mappings = uidl.getObject("typeMappings");
+        JsonObject types = uidl.getObject("types");
+        String connector = null;
+        if (mappings != null && types != null && mappings.hasKey(className)) {
+            String typeId = asString(mappings.get(className));
+            for (String connectorId : types.keys()) {
+                // Connector ids are numeric, the first created is the lowest
+                if (typeId.equals(asString(types.get(connectorId)))
+                        && (connector == null || Integer.parseInt(
+                                connectorId) < Integer.parseInt(connector))) {
+                    connector = connectorId;
+                }
+            }
+        }
+        if (connector == null) {
+            throw new IOException("No " + className + " in the UI");
+        }
+        return connector;
+    }
+
+    private static String asString(JsonValue value) {
+        if (value.getType() == JsonType.NUMBER) {
+            return Long.toString((long) value.asNumber());
+        }
+        return value.asString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+
+/**
+ * JUnit Jupiter extension for spinning up Undertow servlet containers for
+ * tests. The UI or servlet to deploy is read from {@link TestUI} or
+ * {@link TestServlet} on the test class, and the started server is injected
+ * into test methods, lifecycle methods and constructors that have an
+ * {@link UndertowServer} parameter:
+ * 
+ * <pre>
+ * &#64;TestUI(MyUI.class)
+ * &#64;ExtendWith(UndertowExtension.class)
+ * class MyUITest {
+ *     &#64;Test
+ *     void openUI(UndertowServer server) {
+ *         getDriver().get(server.getBaseURL());
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * The server is kept in the extension store of the configured
+ * {@link Scope}, which stops it once that scope is done. Servers are started
+ * at most once per scope, also when tests are run in parallel. The default
+ * scope is {@link Scope#CLASS}. The scope can be set with
+ * {@link #withScope(Scope)} when the extension is registered programmatically,
+ * or for all tests with the configuration parameter
+ * {@value #SCOPE_PARAMETER}, for example in
+ * {@code junit-platform.properties}.
+ * 
+ * @see ExtendWith
+ * @see UndertowRule
+ */
+public class UndertowExtension
+        implements BeforeAllCallback, BeforeEachCallback, ParameterResolver {
+
+    /**
+     * Configuration parameter for the default scope of the servers, one of
+     * {@code method}, {@code class} or {@code root}.
+     */
+    public static final String SCOPE_PARAMETER = "undertow.server.scope";
+
+    private static final Namespace NAMESPACE = Namespace
+            .create(UndertowExtension.class);
+
+    /**
+     * Scopes in which a started server is shared.
+     */
+    public enum Scope {
+        /** A server for each test method. */
+        METHOD,
+        /** A server for each test class, shared by its test methods. */
+        CLASS,
+        /**
+         * A server shared by all test classes that deploy the same UI or
+         * servlet with the same configuration, including classes running
+         * concurrently. Stopped when all tests have run. Sessions are not
+         * reset between tests.
+         */
+        ROOT;
+    }
+
+    private Scope scope;
+    private ServerConfiguration configuration;
+
+    /**
+     * Creates a new extension using the scope from the configuration
+     * parameters, or {@link Scope#CLASS} if not set.
+     */
+    public UndertowExtension() {
+    }
+
+    /**
+     * Sets the scope in which the server of this extension is shared.
+     * Overrides the {@value #SCOPE_PARAMETER} configuration parameter.
+     * 
+     * @param scope
+     *            the scope, not {@code null}
+     * @return this extension
+     */
+    public UndertowExtension withScope(Scope scope) {
+        this.scope = Objects.requireNonNull(scope, "Scope cannot be null");
+        return this;
+    }
+
+    /**
+     * Sets the configuration for the servers started by this extension. With
+     * {@link Scope#ROOT}, only servers that use the same configuration
+     * instance are shared.
+     * 
+     * @param configuration
+     *            the server configuration
+     * @return this extension
+     */
+    public UndertowExtension withConfiguration(
+            ServerConfiguration configuration) {
+        this.configuration = configuration;
+        return this;
+    }
+
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        if (getScope(context) != Scope.METHOD) {
+            // Started before the test instance, like a class rule
+            getServer(context);
+        }
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        getServer(context);
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext,
+            ExtensionContext extensionContext) {
+        return parameterContext.getParameter()
+                .getType() == UndertowServer.class;
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext,
+            ExtensionContext extensionContext) {
+        return getServer(extensionContext);
+    }
+
+    private UndertowServer getServer(ExtensionContext context) {
+        Class<?> deploymentClass = UndertowRule
+                .getDeploymentClass(context.getRequiredTestClass());
+        Scope currentScope = getScope(context);
+        ExtensionContext storeContext;
+        Object key;
+        if (currentScope == Scope.ROOT) {
+            storeContext = context.getRoot();
+            // Configuration is compared by identity
+            key = Arrays.asList(deploymentClass, configuration);
+        } else {
+            storeContext = currentScope == Scope.METHOD
+                    && context.getTestMethod().isPresent() ? context
+                            : getClassContext(context);
+            key = deploymentClass;
+        }
+        // Atomic, so concurrent tests wait for the first one to start it
+        return storeContext.getStore(NAMESPACE)
+                .getOrComputeIfAbsent(key,
+                        k -> new StartedServer(deploymentClass),
+                        StartedServer.class).server;
+    }
+
+    private Scope getScope(ExtensionContext context) {
+        if (scope != null) {
+            return scope;
+        }
+        return context.getConfigurationParameter(SCOPE_PARAMETER)
+                .map(value -> Scope.valueOf(value.trim()
+                        .toUpperCase(Locale.ROOT)))
+                .orElse(Scope.CLASS);
+    }
+
+    private static ExtensionContext getClassContext(
+            ExtensionContext context) {
+        ExtensionContext classContext = context;
+        while (classContext.getTestMethod().isPresent()) {
+            classContext = classContext.getParent().get();
+        }
+        return classContext;
+    }
+
+    /**
+     * Server started for a scope, stopped when its store is closed.
+     */
+    private class StartedServer implements CloseableResource {
+        private final UndertowServer server = new UndertowServer();
+
+        private StartedServer(Class<?> deploymentClass) {
+            UndertowRule.init(server, deploymentClass);
+            if (configuration != null) {
+                server.setConfiguration(configuration);
+            }
+            server.start();
+        }
+
+        @Override
+        public void close() {
+            server.stop();
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package org.vaadin.teemusa.undertow;
 
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import com.vaadin.server.VaadinServlet;
 import com.vaadin.ui.UI;
 
+import io.undertow.servlet.api.ServletInfo;
+
 /**
  * Class for launching Undertow servlet container for simple application
  * deployment.
@@ -21,9 +26,39 @@ public class UndertowLauncher implements Runnable {
 
     @Override
     public void run() {
-        getServer().start();
-        Logger.getLogger(UndertowLauncher.class.getSimpleName())
-                .info("Server started at " + getServer().getBaseURL());
+        UndertowServer.await(runAsync());
+    }
+
+    /**
+     * Starts the server without blocking the calling thread.
+     * 
+     * @return future completed with the server once it has started
+     */
+    public CompletableFuture<UndertowServer> runAsync() {
+        return getServer().startAsync().thenApply(server -> {
+            Logger logger = Logger
+                    .getLogger(UndertowLauncher.class.getSimpleName());
+            for (String contextPath : server.getContextPaths()) {
+                logger.info("Server started at "
+                        + server.getBaseURL(contextPath));
+            }
+            logger.info("Startup timings: url=" + server.getBaseURL() + " "
+                    + server.getStartupTimings());
+            return server;
+        });
+    }
+
+    /**
+     * Starts the servers of all given launchers concurrently and waits until
+     * all of them have started.
+     * 
+     * @param launchers
+     *            the launchers to run
+     */
+    public static void runAll(UndertowLauncher... launchers) {
+        UndertowServer.await(CompletableFuture.allOf(Arrays.stream(launchers)
+                .map(UndertowLauncher::runAsync)
+                .toArray(CompletableFuture[]::new)));
     }
 
     /**
@@ -35,6 +70,98 @@ public class UndertowLauncher implements Runnable {
         return server;
     }
 
+    /**
+     * Sets the configuration for the server started by this launcher.
+     * 
+     * @param configuration
+     *            the server configuration
+     * @return this launcher
+     */
+    public UndertowLauncher withConfiguration(
+            ServerConfiguration configuration) {
+        getServer().setConfiguration(configuration);
+        return this;
+    }
+
+    /**
+     * Adds a deployment of the given {@link UI} at the given context path to
+     * the server of this launcher. All deployments share the listener and
+     * worker threads of the server.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param uiClass
+     *            the ui to run
+     * @return this launcher
+     */
+    public UndertowLauncher addUI(String contextPath,
+            Class<? extends UI> uiClass) {
+        getServer().addUI(contextPath, uiClass);
+        return this;
+    }
+
+    /**
+     * Adds a deployment of the given {@link UI} at the given context path
+     * with settings of its own, such as init parameters, to the server of
+     * this launcher.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param uiClass
+     *            the ui to run
+     * @param settings
+     *            callback configuring the servlet of the deployment, for
+     *            example with {@link ServletInfo#addInitParam(String, String)}
+     * @return this launcher
+     */
+    public UndertowLauncher addUI(String contextPath,
+            Class<? extends UI> uiClass, Consumer<ServletInfo> settings) {
+        getServer().addUI(contextPath, uiClass, settings);
+        return this;
+    }
+
+    /**
+     * Adds a deployment of the given {@link VaadinServlet} at the given
+     * context path to the server of this launcher. All deployments share the
+     * listener and worker threads of the server.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param servletClass
+     *            the VaadinServlet to run
+     * @return this launcher
+     */
+    public UndertowLauncher addServlet(String contextPath,
+            Class<? extends VaadinServlet> servletClass) {
+        getServer().addServlet(contextPath, servletClass);
+        return this;
+    }
+
+    /**
+     * Adds a deployment of the given {@link VaadinServlet} at the given
+     * context path with settings of its own, such as init parameters, to the
+     * server of this launcher.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param servletClass
+     *            the VaadinServlet to run
+     * @param settings
+     *            callback configuring the servlet of the deployment, for
+     *            example with {@link ServletInfo#addInitParam(String, String)}
+     * @return this launcher
+     */
+    public UndertowLauncher addServlet(String contextPath,
+            Class<? extends VaadinServlet> servletClass,
+            Consumer<ServletInfo> settings) {
+        getServer().addServlet(contextPath, servletClass, settings);
+        return this;
+    }
+
     /**
      * Returns a new {@link UndertowLauncher} using the given {@link UI} with
      * default port 8080.
@@ -1,18 +1,32 @@
 package org.vaadin.teemusa.undertow;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.rules.ExternalResource;
+import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 
 import com.vaadin.server.VaadinServlet;
 import com.vaadin.ui.UI;
 
+import io.undertow.servlet.api.ServletInfo;
+
 /**
  * Test rule for spinning up Undertow servlet containers for tests. Used with
  * {@link ClassRule} to run one instance per test class, or {@link Rule} to run
- * one instance per test method.
+ * one instance per test method. Pooled rules reuse started servers across
+ * test methods and classes.
+ * <p>
+ * Rules can be used from tests running in parallel, for example with the
+ * {@code parallel} setting of Surefire or with TestBench
+ * {@code ParallelTest}.
  * 
  * @see TestServlet
  * @see TestUI
@@ -20,45 +34,269 @@ import com.vaadin.ui.UI;
  */
 public class UndertowRule extends ExternalResource {
 
-    private final UndertowServer server;
+    // Leased on a startup thread for pooled rules
+    private volatile UndertowServer server;
+    private final boolean pooled;
+    private Class<?> deploymentClass;
+    private ServerConfiguration configuration;
+    private final Map<String, Class<?>> contexts = new LinkedHashMap<>();
+    private final Map<String, Consumer<ServletInfo>> settings = new LinkedHashMap<>();
 
     protected UndertowRule(UndertowServer undertowServer) {
         this.server = undertowServer;
+        this.pooled = false;
+    }
+
+    /**
+     * Creates a rule that leases a started server from a pool shared by all
+     * pooled rules with the same UI or servlet class and configuration.
+     * 
+     * @param deploymentClass
+     *            the UI or VaadinServlet class to deploy, or {@code null} to
+     *            read it from {@link TestServlet} or {@link TestUI}
+     */
+    protected UndertowRule(Class<?> deploymentClass) {
+        this.deploymentClass = deploymentClass;
+        this.pooled = true;
     }
 
     @Override
     public Statement apply(Statement base, Description description) {
-        // Determine the servlet
-        Class<?> cls = description.getTestClass();
-        if (!server.isInitialized()) {
-            if (cls.isAnnotationPresent(TestServlet.class)) {
-                server.initServlet(
-                        cls.getAnnotation(TestServlet.class).value());
-            } else if (cls.isAnnotationPresent(TestUI.class)) {
-                server.initUI(cls.getAnnotation(TestUI.class).value());
-            } else {
-                throw new IllegalStateException(
-                        "Cannot start Undertow server. Missing @TestServlet or @TestUI annotation");
+        prepare(description);
+        return super.apply(base, description);
+    }
+
+    private void prepare(Description description) {
+        if (pooled) {
+            if (deploymentClass == null) {
+                deploymentClass = getDeploymentClass(
+                        description.getTestClass());
             }
+        } else if (!server.isInitialized()) {
+            // Determine the servlet
+            init(server, getDeploymentClass(description.getTestClass()));
         }
-
-        return super.apply(base, description);
     }
 
     @Override
     protected void before() throws Throwable {
-        server.start();
+        UndertowServer.await(beforeAsync());
+    }
+
+    private CompletableFuture<UndertowServer> beforeAsync() {
+        if (pooled) {
+            return UndertowServerPool
+                    .acquireAsync(getPoolKey(), this::createPooledServer)
+                    .thenApply(s -> server = s);
+        }
+        return server.startAsync();
     }
 
     @Override
     protected void after() {
-        server.stop();
+        if (pooled) {
+            if (server != null) {
+                UndertowServerPool.release(getPoolKey(), server);
+            }
+        } else {
+            server.stop();
+        }
     }
 
+    /**
+     * Gets the server of this rule. For pooled rules this is the server leased
+     * for the currently running test, or {@code null} before the first test.
+     * 
+     * @return the undertow server
+     */
     public UndertowServer getServer() {
         return server;
     }
 
+    /**
+     * Sets the configuration for the server started by this rule. Pooled
+     * rules only share servers that use the same configuration instance.
+     * Pooled servers always use daemon threads, as they are never stopped,
+     * but the configuration itself is left unchanged.
+     * 
+     * @param configuration
+     *            the server configuration
+     * @return this rule
+     */
+    public UndertowRule withConfiguration(ServerConfiguration configuration) {
+        if (pooled) {
+            this.configuration = configuration;
+        } else {
+            server.setConfiguration(configuration);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a deployment of the given UI at the given context path to the
+     * server started by this rule.
+     * 
+     * @param contextPath
+     *            the context path of the deployment
+     * @param uiClass
+     *            the UI to deploy
+     * @return this rule
+     */
+    public UndertowRule addUI(String contextPath,
+            Class<? extends UI> uiClass) {
+        return addUI(contextPath, uiClass, servlet -> {
+        });
+    }
+
+    /**
+     * Adds a deployment of the given UI at the given context path with
+     * settings of its own, such as init parameters, to the server started by
+     * this rule. Pooled rules only share servers that use the same settings
+     * instances.
+     * 
+     * @param contextPath
+     *            the context path of the deployment
+     * @param uiClass
+     *            the UI to deploy
+     * @param settings
+     *            callback configuring the servlet of the deployment
+     * @return this rule
+     */
+    public UndertowRule addUI(String contextPath,
+            Class<? extends UI> uiClass, Consumer<ServletInfo> settings) {
+        return addContext(contextPath, uiClass, settings);
+    }
+
+    /**
+     * Adds a deployment of the given Servlet at the given context path to the
+     * server started by this rule.
+     * 
+     * @param contextPath
+     *            the context path of the deployment
+     * @param servletClass
+     *            the servlet to deploy
+     * @return this rule
+     */
+    public UndertowRule addServlet(String contextPath,
+            Class<? extends VaadinServlet> servletClass) {
+        return addServlet(contextPath, servletClass, servlet -> {
+        });
+    }
+
+    /**
+     * Adds a deployment of the given Servlet at the given context path with
+     * settings of its own, such as init parameters, to the server started by
+     * this rule. Pooled rules only share servers that use the same settings
+     * instances.
+     * 
+     * @param contextPath
+     *            the context path of the deployment
+     * @param servletClass
+     *            the servlet to deploy
+     * @param settings
+     *            callback configuring the servlet of the deployment
+     * @return this rule
+     */
+    public UndertowRule addServlet(String contextPath,
+            Class<? extends VaadinServlet> servletClass,
+            Consumer<ServletInfo> settings) {
+        return addContext(contextPath, servletClass, settings);
+    }
+
+    private UndertowRule addContext(String contextPath,
+            Class<?> deploymentClass, Consumer<ServletInfo> settings) {
+        if (pooled) {
+            contexts.put(contextPath, deploymentClass);
+            this.settings.put(contextPath, settings);
+        } else {
+            addDeployment(server, contextPath, deploymentClass, settings);
+        }
+        return this;
+    }
+
+    private Object getPoolKey() {
+        // Configuration and settings are compared by identity
+        return Arrays.asList(deploymentClass, configuration, contexts,
+                settings);
+    }
+
+    private UndertowServer createPooledServer() {
+        UndertowServer pooledServer = new UndertowServer();
+        init(pooledServer, deploymentClass);
+        contexts.forEach((contextPath, contextClass) -> addDeployment(
+                pooledServer, contextPath, contextClass,
+                settings.get(contextPath)));
+        if (configuration != null) {
+            pooledServer.setConfiguration(configuration);
+        }
+        // Pooled servers are never stopped by tests, so they must not keep
+        // the JVM alive, whatever the configuration says
+        pooledServer.forceDaemonThreads();
+        return pooledServer;
+    }
+
+    static Class<?> getDeploymentClass(Class<?> testClass) {
+        if (testClass.isAnnotationPresent(TestServlet.class)) {
+            return testClass.getAnnotation(TestServlet.class).value();
+        } else if (testClass.isAnnotationPresent(TestUI.class)) {
+            return testClass.getAnnotation(TestUI.class).value();
+        }
+        throw new IllegalStateException(
+                "Cannot start Undertow server. Missing @TestServlet or @TestUI annotation");
+    }
+
+    static void init(UndertowServer server, Class<?> deploymentClass) {
+        if (VaadinServlet.class.isAssignableFrom(deploymentClass)) {
+            server.initServlet(deploymentClass.asSubclass(VaadinServlet.class));
+        } else {
+            server.initUI(deploymentClass.asSubclass(UI.class));
+        }
+    }
+
+    private static void addDeployment(UndertowServer server,
+            String contextPath, Class<?> deploymentClass,
+            Consumer<ServletInfo> settings) {
+        if (VaadinServlet.class.isAssignableFrom(deploymentClass)) {
+            server.addServlet(contextPath,
+                    deploymentClass.asSubclass(VaadinServlet.class),
+                    settings);
+        } else {
+            server.addUI(contextPath, deploymentClass.asSubclass(UI.class),
+                    settings);
+        }
+    }
+
+    /**
+     * Creates a rule that starts the servers of all given rules concurrently
+     * and stops them after the tests. The given rules should not be used as
+     * rules on their own.
+     * 
+     * @param rules
+     *            the rules to start together
+     * @return the combined rule
+     */
+    public static TestRule all(UndertowRule... rules) {
+        return (base, description) -> {
+            for (UndertowRule rule : rules) {
+                rule.prepare(description);
+            }
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    try {
+                        UndertowServer.await(CompletableFuture.allOf(
+                                Arrays.stream(rules)
+                                        .map(UndertowRule::beforeAsync)
+                                        .toArray(CompletableFuture[]::new)));
+                        base.evaluate();
+                    } finally {
+                        Arrays.stream(rules).forEach(UndertowRule::after);
+                    }
+                }
+            };
+        };
+    }
+
     /**
      * Creates a new undertow server without configuring any UI or Servlet.
      * Should be used as a {@link ClassRule} accompanied with
@@ -71,7 +309,7 @@ public class UndertowRule extends ExternalResource {
     }
 
     /**
-     * Creates a new undertow server for given Servlet using random port.
+     * Creates a new undertow server for given Servlet using any free port.
      * 
      * @param servletClass
      *            the servlet to deploy
@@ -79,7 +317,7 @@ public class UndertowRule extends ExternalResource {
      */
     public static UndertowRule withServlet(
             Class<? extends VaadinServlet> servletClass) {
-        return withServlet(servletClass, NetworkUtil.getRandomPort());
+        return withServlet(servletClass, UndertowServer.ANY_PORT);
     }
 
     /**
@@ -97,14 +335,14 @@ public class UndertowRule extends ExternalResource {
     }
 
     /**
-     * Creates a new undertow server for given UI using random port.
+     * Creates a new undertow server for given UI using any free port.
      * 
      * @param uiClass
      *            the ui to deploy
      * @return the undertow server
      */
     public static UndertowRule withUI(Class<? extends UI> uiClass) {
-        return withUI(uiClass, NetworkUtil.getRandomPort());
+        return withUI(uiClass, UndertowServer.ANY_PORT);
     }
 
     /**
@@ -119,4 +357,43 @@ public class UndertowRule extends ExternalResource {
     public static UndertowRule withUI(Class<? extends UI> uiClass, int port) {
         return new UndertowRule(UndertowServer.withUI(uiClass, port));
     }
+
+    /**
+     * Creates a pooled rule that reads the UI or Servlet from
+     * {@link TestServlet} or {@link TestUI}. Each test gets a started server
+     * from a pool shared across test classes, and the sessions of the server
+     * are invalidated after the test.
+     * 
+     * @return the undertow rule
+     */
+    public static UndertowRule createPooled() {
+        return new UndertowRule((Class<?>) null);
+    }
+
+    /**
+     * Creates a pooled rule for given Servlet. Each test gets a started server
+     * from a pool shared across test classes, and the sessions of the server
+     * are invalidated after the test.
+     * 
+     * @param servletClass
+     *            the servlet to deploy
+     * @return the undertow rule
+     */
+    public static UndertowRule pooledServlet(
+            Class<? extends VaadinServlet> servletClass) {
+        return new UndertowRule((Class<?>) servletClass);
+    }
+
+    /**
+     * Creates a pooled rule for given UI. Each test gets a started server from
+     * a pool shared across test classes, and the sessions of the server are
+     * invalidated after the test.
+     * 
+     * @param uiClass
+     *            the ui to deploy
+     * @return the undertow rule
+     */
+    public static UndertowRule pooledUI(Class<? extends UI> uiClass) {
+        return new UndertowRule((Class<?>) uiClass);
+    }
 }
@@ -1,41 +1,163 @@
 package org.vaadin.teemusa.undertow;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.management.ObjectName;
+import javax.net.ssl.SSLContext;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 
+import org.vaadin.teemusa.undertow.HealthHandler.ActiveRequests;
+import org.vaadin.teemusa.undertow.StartupTimings.Phase;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
 import com.vaadin.server.VaadinServlet;
 import com.vaadin.ui.UI;
 
 import io.undertow.Handlers;
 import io.undertow.Undertow;
+import io.undertow.Undertow.ListenerInfo;
+import io.undertow.connector.ByteBufferPool;
+import io.undertow.predicate.Predicate;
+import io.undertow.server.DefaultByteBufferPool;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.GracefulShutdownHandler;
 import io.undertow.server.handlers.PathHandler;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.handlers.accesslog.AccessLogHandler;
+import io.undertow.server.handlers.encoding.ContentEncodingRepository;
+import io.undertow.server.handlers.encoding.DeflateEncodingProvider;
+import io.undertow.server.handlers.encoding.EncodingHandler;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionManager;
 import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.api.ServletContainer;
 import io.undertow.servlet.api.ServletInfo;
+import io.undertow.util.StatusCodes;
+import io.undertow.websockets.jsr.WebSocketDeploymentInfo;
 
 /**
  * Class for spinning up Undertow servlet containers.
+ * <p>
+ * Servers can be started and stopped from any thread, and many servers can
+ * run in the same JVM at once. State set up while starting is published to
+ * other threads, such as those of tests running in parallel.
  */
 public class UndertowServer {
 
-    private Undertow serverInstance;
-    private int port;
-    private String serverAddress;
+    /**
+     * Port number for binding to any free port chosen by the operating system.
+     * The actual port is available from {@link #getPort()} once the server
+     * has been started.
+     */
+    public static final int ANY_PORT = 0;
+
+    private static final String ROOT = "/";
+    private static final int MAX_STARTUP_THREADS = 8;
+
+    private final StartupTimings startupTimings = new StartupTimings();
+    private ServerConfiguration configuration = new ServerConfiguration();
+    // Set for servers that are never stopped, whatever the configuration says
+    private volatile boolean daemonThreads;
+    private volatile Undertow serverInstance;
+    private final Map<String, Context> contexts = new LinkedHashMap<>();
+    private final ServletContainer container = ServletContainer.Factory
+            .newInstance();
+    private PathHandler path;
+    private volatile GracefulShutdownHandler shutdownHandler;
+    private SessionInspector sessionInspector;
+    private ObjectName sessionInspectorName;
+    private RequestMetrics requestMetrics;
+    private ObjectName requestMetricsName;
+    private volatile AdmissionHandler admission;
+    private volatile AsyncAccessLogReceiver accessLog;
+    private final ActiveRequests activeRequests = new ActiveRequests();
+    // Identifies the synthetic requests of the warm-up of this server
+    private final String warmUpToken = UUID.randomUUID().toString();
+    private ExecutorService virtualThreadExecutor;
+    private XnioWorker webSocketWorker;
+    private ByteBufferPool webSocketBuffers;
+    private ObjectName admissionName;
+    // Set by the startup threads, read by any thread
+    private volatile int port;
+    private volatile int securePort = -1;
+    private volatile String serverAddress;
+    private volatile boolean ready;
+
+    /**
+     * State of the deployment at one context path.
+     */
+    private static class Context {
+        private final String contextPath;
+        private DeploymentInfo deploymentInfo;
+        // Read by monitoring requests while being deployed
+        private volatile DeploymentManager manager;
+        private int generation;
+        private volatile StaticResourceHandler staticResources;
+        private volatile OffHeapSessionManager offHeapSessions;
+
+        private Context(String contextPath, DeploymentInfo deploymentInfo) {
+            this.contextPath = contextPath;
+            this.deploymentInfo = deploymentInfo;
+        }
+
+        private String nextDeploymentName() {
+            // Named like war files deployed to the same context path
+            String name = ROOT.equals(contextPath) ? "ROOT"
+                    : contextPath.substring(1).replace('/', '#');
+            generation++;
+            return (generation == 1 ? name : name + "-" + generation)
+                    + ".war";
+        }
+    }
+
+    /**
+     * A deployment that has been started but is not yet served.
+     */
+    private static class StartedDeployment {
+        private DeploymentManager manager;
+        private HttpHandler handler;
+        private StaticResourceHandler staticResources;
+        private OffHeapSessionManager offHeapSessions;
+    }
 
     protected UndertowServer() {
     }
 
     /**
-     * Initializes the UndertowServer with given {@link UI} using random port.
+     * Initializes the UndertowServer with given {@link UI} using any free port.
      * 
      * @param uiClass
      *            the UI to deploy
      */
     protected void initUI(Class<? extends UI> uiClass) {
-        initUI(uiClass, NetworkUtil.getRandomPort());
+        initUI(uiClass, ANY_PORT);
     }
 
     /**
@@ -47,23 +169,18 @@ public class UndertowServer {
      *            the port to use
      */
     protected void initUI(Class<? extends UI> uiClass, int port) {
-        ServletInfo servlet = Servlets
-                .servlet(uiClass.getSimpleName(), VaadinServlet.class)
-                .addInitParam("ui", uiClass.getCanonicalName())
-                .addMappings("/*").setAsyncSupported(true);
-
-        init(servlet, uiClass.getClassLoader(), port);
+        init(createUIServlet(uiClass), uiClass.getClassLoader(), port);
     }
 
     /**
      * Initializes the UndertowServer with given {@link VaadinServlet} using
-     * random port.
+     * any free port.
      * 
      * @param servletClass
      *            the VaadinServlet to deploy
      */
     protected void initServlet(Class<? extends VaadinServlet> servletClass) {
-        initServlet(servletClass, NetworkUtil.getRandomPort());
+        initServlet(servletClass, ANY_PORT);
     }
 
     /**
@@ -76,21 +193,13 @@ public class UndertowServer {
      */
     protected void initServlet(Class<? extends VaadinServlet> servletClass,
             int port) {
-        assert servletClass.isAnnotationPresent(
-                WebServlet.class) : "No WebServlet annotation present.";
-
-        WebServlet webServlet = servletClass.getAnnotation(WebServlet.class);
-
-        ServletInfo servlet = Servlets
-                .servlet(servletClass.getSimpleName(), servletClass)
-                .addMappings(webServlet.value())
-                .addMappings(webServlet.urlPatterns()).setAsyncSupported(true);
-
-        init(servlet, servletClass.getClassLoader(), port);
+        init(createServlet(servletClass), servletClass.getClassLoader(),
+                port);
     }
 
     /**
-     * Initializes the UndertowServer.
+     * Initializes the UndertowServer. The deployment is created when the server
+     * is started.
      * 
      * @param servlet
      *            the defined servlet
@@ -101,59 +210,825 @@ public class UndertowServer {
      */
     protected void init(ServletInfo servlet, ClassLoader classLoader,
             int port) {
-        DeploymentInfo servletBuilder = Servlets.deployment()
-                .setClassLoader(classLoader).setContextPath("/")
-                .setDeploymentName("ROOT.war").setDefaultEncoding("UTF-8")
+        addDeployment(ROOT, servlet, classLoader);
+        this.port = port;
+    }
+
+    /**
+     * Adds a deployment of the given {@link UI} at the given context path.
+     * All deployments of the server share its listeners and worker threads.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param uiClass
+     *            the UI to deploy
+     * @see #addDeployment(String, ServletInfo, ClassLoader)
+     */
+    protected void addUI(String contextPath, Class<? extends UI> uiClass) {
+        addUI(contextPath, uiClass, servlet -> {
+        });
+    }
+
+    /**
+     * Adds a deployment of the given {@link UI} at the given context path
+     * with settings of its own, such as init parameters.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param uiClass
+     *            the UI to deploy
+     * @param settings
+     *            callback configuring the servlet of the deployment, for
+     *            example with {@link ServletInfo#addInitParam(String, String)}
+     */
+    protected void addUI(String contextPath, Class<? extends UI> uiClass,
+            Consumer<ServletInfo> settings) {
+        ServletInfo servlet = createUIServlet(uiClass);
+        settings.accept(servlet);
+        addDeployment(contextPath, servlet, uiClass.getClassLoader());
+    }
+
+    /**
+     * Adds a deployment of the given {@link VaadinServlet} at the given
+     * context path. The servlet mappings are relative to the context path.
+     * All deployments of the server share its listeners and worker threads.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param servletClass
+     *            the VaadinServlet to deploy
+     * @see #addDeployment(String, ServletInfo, ClassLoader)
+     */
+    protected void addServlet(String contextPath,
+            Class<? extends VaadinServlet> servletClass) {
+        addServlet(contextPath, servletClass, servlet -> {
+        });
+    }
+
+    /**
+     * Adds a deployment of the given {@link VaadinServlet} at the given
+     * context path with settings of its own, such as init parameters.
+     * 
+     * @param contextPath
+     *            the context path of the deployment, for example
+     *            {@code "/admin"}
+     * @param servletClass
+     *            the VaadinServlet to deploy
+     * @param settings
+     *            callback configuring the servlet of the deployment, for
+     *            example with {@link ServletInfo#addInitParam(String, String)}
+     */
+    protected void addServlet(String contextPath,
+            Class<? extends VaadinServlet> servletClass,
+            Consumer<ServletInfo> settings) {
+        ServletInfo servlet = createServlet(servletClass);
+        settings.accept(servlet);
+        addDeployment(contextPath, servlet, servletClass.getClassLoader());
+    }
+
+    /**
+     * Adds a deployment at the given context path. The servlet info carries
+     * the settings of the deployment, such as init parameters. The
+     * deployment is created when the server is started, or when it is
+     * redeployed.
+     * 
+     * @param contextPath
+     *            the context path of the deployment
+     * @param servlet
+     *            the defined servlet
+     * @param classLoader
+     *            the classloader to use
+     * @throws IllegalArgumentException
+     *             if the context path already has a deployment
+     */
+    protected void addDeployment(String contextPath, ServletInfo servlet,
+            ClassLoader classLoader) {
+        long start = System.nanoTime();
+        String normalized = normalizeContextPath(contextPath);
+        if (contexts.containsKey(normalized)) {
+            throw new IllegalArgumentException(
+                    "Context path " + normalized + " is already in use");
+        }
+        DeploymentInfo info = Servlets.deployment().setClassLoader(classLoader)
+                .setContextPath(normalized).setDefaultEncoding("UTF-8")
                 .addServlets(servlet);
+        contexts.put(normalized, new Context(normalized, info));
+        startupTimings.record(Phase.INIT, start);
+    }
+
+    private static String normalizeContextPath(String contextPath) {
+        Objects.requireNonNull(contextPath, "Context path cannot be null");
+        String normalized = contextPath.startsWith("/") ? contextPath
+                : "/" + contextPath;
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static ServletInfo createUIServlet(Class<? extends UI> uiClass) {
+        return Servlets.servlet(uiClass.getSimpleName(), VaadinServlet.class)
+                .addInitParam("ui", uiClass.getCanonicalName())
+                .addMappings("/*").setAsyncSupported(true);
+    }
 
-        DeploymentManager manager = Servlets.defaultContainer()
-                .addDeployment(servletBuilder);
+    private static ServletInfo createServlet(
+            Class<? extends VaadinServlet> servletClass) {
+        assert servletClass.isAnnotationPresent(
+                WebServlet.class) : "No WebServlet annotation present.";
 
-        manager.deploy();
+        WebServlet webServlet = servletClass.getAnnotation(WebServlet.class);
 
+        return Servlets.servlet(servletClass.getSimpleName(), servletClass)
+                .addMappings(webServlet.value())
+                .addMappings(webServlet.urlPatterns()).setAsyncSupported(true);
+    }
+
+    /**
+     * Deploys and starts the servlet deployments using the current
+     * configuration.
+     */
+    protected void deploy() {
+        contexts.values().forEach(this::deploy);
+    }
+
+    /**
+     * Deploys and starts a new deployment for the given context and puts it
+     * in place of the previous one, if any.
+     * 
+     * @param context
+     *            the context to deploy
+     */
+    private void deploy(Context context) {
+        activate(context, context.deploymentInfo,
+                start(context, context.deploymentInfo));
+    }
+
+    /**
+     * Deploys and starts a new deployment for the given context without
+     * serving it yet.
+     * 
+     * @param context
+     *            the context to deploy
+     * @param deploymentInfo
+     *            the deployment to start
+     * @return the started deployment
+     */
+    private StartedDeployment start(Context context,
+            DeploymentInfo deploymentInfo) {
+        StartedDeployment started = new StartedDeployment();
+        long start = System.nanoTime();
+        // Set on the copy, so that the stored deployment never keeps the
+        // executor of a stopped server
+        DeploymentInfo info = deploymentInfo.clone()
+                .setDeploymentName(context.nextDeploymentName());
+        Executor executor = configuration.getRequestExecutor();
+        if (executor == null) {
+            executor = virtualThreadExecutor;
+        }
+        if (executor != null) {
+            info.setExecutor(executor).setAsyncExecutor(executor);
+        }
+        if (configuration.isOffHeapSessions()) {
+            info.setSessionManagerFactory(deployment -> {
+                started.offHeapSessions = new OffHeapSessionManager(
+                        deployment, configuration);
+                return started.offHeapSessions;
+            });
+        }
+        if (configuration.isWarmUp()) {
+            // Initialized before the warm-up rather than by its first request
+            info.getServlets().values().stream()
+                    .filter(servlet -> servlet.getLoadOnStartup() == null)
+                    .forEach(servlet -> servlet.setLoadOnStartup(1));
+        }
+        if (webSocketWorker != null) {
+            // Vaadin push uses JSR-356 when the deployment provides it
+            info.addServletContextAttribute(
+                    WebSocketDeploymentInfo.ATTRIBUTE_NAME,
+                    new WebSocketDeploymentInfo().setWorker(webSocketWorker)
+                            .setBuffers(webSocketBuffers)
+                            .setDispatchToWorkerThread(true));
+        }
+        started.manager = container.addDeployment(info);
+
+        // Redeployments are not part of the startup
+        boolean starting = !ready;
+        HttpHandler httpHandler;
         try {
-            HttpHandler httpHandler = manager.start();
-            PathHandler path = Handlers.path(Handlers.redirect("/"))
-                    .addPrefixPath("/", httpHandler);
+            started.manager.deploy();
+            if (starting) {
+                startupTimings.record(Phase.DEPLOY, start);
+            }
+            start = System.nanoTime();
+            httpHandler = started.manager.start();
+        } catch (ServletException | RuntimeException e) {
+            // Keep serving the previous deployment, if any
+            undeploy(started.manager);
+            throw new RuntimeException("Could not start deployment", e);
+        }
+        if (configuration.isCompression()) {
+            httpHandler = createCompressionHandler(httpHandler);
+        }
+        if (configuration.isCompression()
+                || configuration.isStaticResourceCaching()) {
+            // Serve /VAADIN/* ahead of the servlet
+            started.staticResources = new StaticResourceHandler(httpHandler,
+                    deploymentInfo.getClassLoader(), configuration);
+            httpHandler = started.staticResources;
+        }
+        started.handler = activeRequests.track(httpHandler);
+        if (starting) {
+            startupTimings.record(Phase.START, start);
+        }
+        return started;
+    }
 
-            this.port = port;
-            serverInstance = Undertow.builder().addHttpListener(port, "0.0.0.0")
-                    .setHandler(path).build();
+    /**
+     * Puts a started deployment in place of the previous deployment of the
+     * context and undeploys the previous one.
+     * 
+     * @param context
+     *            the context of the deployment
+     * @param deploymentInfo
+     *            the deployment that was started
+     * @param started
+     *            the started deployment
+     */
+    private void activate(Context context, DeploymentInfo deploymentInfo,
+            StartedDeployment started) {
+        DeploymentManager oldManager = context.manager;
+        context.deploymentInfo = deploymentInfo;
+        context.manager = started.manager;
+        context.staticResources = started.staticResources;
+        context.offHeapSessions = started.offHeapSessions;
+        // Replaces the previous deployment for all new requests at once
+        path.addPrefixPath(context.contextPath, started.handler);
 
-            serverInstance.getListenerInfo().forEach(System.out::println);
-        } catch (Exception e) {
+        if (sessionInspector != null) {
+            sessionInspector.addSessionManager(
+                    started.manager.getDeployment().getSessionManager());
+            sessionInspector.start();
         }
+        undeploy(oldManager);
+    }
+
+    /**
+     * Replaces the running deployments with new ones while the listeners stay
+     * bound. Requests arriving after a new deployment has started are served
+     * by it, and the previous deployment is undeployed. Sessions of the
+     * previous deployments are not carried over.
+     */
+    public void redeploy() {
+        redeploy(null);
     }
 
     /**
-     * Returns whether the UndertowServer has been initialized.
+     * Replaces the running deployments with new ones using the given
+     * classloader while the listeners stay bound. The servlet classes are
+     * loaded again from the classloader, so a fresh classloader deploys the
+     * current version of the UI classes. Requests arriving after a new
+     * deployment has started are served by it, and the previous deployment is
+     * undeployed. Sessions of the previous deployments are not carried over.
+     * <p>
+     * All new deployments are started before any of them is put in place. If
+     * one of them fails to start, the ones already started are undeployed
+     * and the previous deployments keep serving requests.
+     * 
+     * @param classLoader
+     *            the classloader of the new deployments, or {@code null} to
+     *            keep the classloader of each deployment
+     * @throws RuntimeException
+     *             if a new deployment could not be started
+     */
+    public synchronized void redeploy(ClassLoader classLoader) {
+        if (contexts.values().stream().allMatch(c -> c.manager == null)) {
+            throw new IllegalStateException("Server has not been started");
+        }
+        Map<Context, DeploymentInfo> infos = new LinkedHashMap<>();
+        for (Context context : contexts.values()) {
+            DeploymentInfo previous = context.deploymentInfo;
+            ClassLoader loader = classLoader != null ? classLoader
+                    : previous.getClassLoader();
+            DeploymentInfo info = previous.clone().setClassLoader(loader);
+            info.getServlets().clear();
+            for (ServletInfo servlet : previous.getServlets().values()) {
+                info.addServlet(reload(servlet, loader));
+            }
+            infos.put(context, info);
+        }
+
+        Map<Context, StartedDeployment> started = new LinkedHashMap<>();
+        try {
+            infos.forEach((context, info) -> started.put(context,
+                    start(context, info)));
+        } catch (RuntimeException | Error e) {
+            started.values().forEach(deployment -> undeploy(
+                    deployment.manager));
+            throw e;
+        }
+        started.forEach((context, deployment) -> activate(context,
+                infos.get(context), deployment));
+    }
+
+    private static ServletInfo reload(ServletInfo servlet,
+            ClassLoader classLoader) {
+        try {
+            ServletInfo reloaded = Servlets.servlet(servlet.getName(),
+                    classLoader.loadClass(servlet.getServletClass().getName())
+                            .asSubclass(Servlet.class))
+                    .addMappings(servlet.getMappings())
+                    .setAsyncSupported(servlet.isAsyncSupported())
+                    .setLoadOnStartup(servlet.getLoadOnStartup());
+            servlet.getInitParams().forEach(reloaded::addInitParam);
+            return reloaded;
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(
+                    "Could not load " + servlet.getServletClass().getName(),
+                    e);
+        }
+    }
+
+    private HttpHandler createCompressionHandler(HttpHandler next) {
+        Predicate compressible = new CompressionPredicate(configuration);
+        ContentEncodingRepository encodings = new ContentEncodingRepository();
+        encodings.addEncodingHandler("gzip", new GzipEncodingProvider(), 100,
+                compressible);
+        encodings.addEncodingHandler("deflate", new DeflateEncodingProvider(),
+                50, compressible);
+        return new EncodingHandler(next, encodings);
+    }
+
+    /**
+     * Creates the handler chain in front of the path handler.
+     * 
+     * @return the root handler of the server
+     */
+    protected HttpHandler createRootHandler() {
+        HttpHandler handler = path;
+        if (configuration.getMaxConcurrentRequests() > 0) {
+            admission = new AdmissionHandler(handler, configuration);
+            handler = admission;
+        }
+        HttpHandler unrecorded = handler;
+        if (requestMetrics != null) {
+            // Outside of admission control, so rejected requests are recorded
+            handler = new MetricsHandler(handler, requestMetrics,
+                    configuration);
+        }
+        if (configuration.getAccessLogDirectory() != null) {
+            accessLog = new AsyncAccessLogReceiver(
+                    configuration.getAccessLogDirectory(),
+                    configuration.getAccessLogBufferSize());
+            handler = new AccessLogHandler(handler, accessLog,
+                    configuration.getAccessLogPattern(),
+                    UndertowServer.class.getClassLoader());
+        }
+        if (configuration.isWarmUp() && handler != unrecorded) {
+            // Warm-up requests bypass the metrics and the access log
+            handler = Handlers.predicate(
+                    exchange -> warmUpToken.equals(exchange
+                            .getRequestHeaders().getFirst(WarmUp.HEADER)),
+                    unrecorded, handler);
+        }
+        if (configuration.getShutdownTimeout() > 0) {
+            // Outermost, so that every request is tracked while draining
+            shutdownHandler = Handlers.gracefulShutdown(handler);
+            handler = shutdownHandler;
+        }
+        return handler;
+    }
+
+    /**
+     * Builds the Undertow instance using the current configuration.
+     * 
+     * @return the undertow instance
+     */
+    protected Undertow build() {
+        Undertow.Builder builder = Undertow.builder()
+                .addHttpListener(port, "0.0.0.0")
+                .setHandler(createRootHandler());
+        if (configuration.getHttpsPort() != null) {
+            SSLContext sslContext = configuration.getSslContext();
+            if (sslContext == null) {
+                // The session cache is tuned per server, the key is shared
+                sslContext = SelfSignedCertificate.newSslContext();
+            }
+            configuration.configure(sslContext);
+            builder.addHttpsListener(configuration.getHttpsPort(), "0.0.0.0",
+                    sslContext);
+        }
+        configuration.configure(builder);
+        if (daemonThreads) {
+            builder.setWorkerOption(Options.THREAD_DAEMON, true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns whether the UndertowServer has been initialized with a
+     * deployment at the root context path.
      * 
      * @return {@code true} if initialized; {@code false} if not
      */
     public boolean isInitialized() {
-        return serverInstance != null;
+        return contexts.containsKey(ROOT);
     }
 
     /**
-     * Starts the server.
+     * Gets the configuration used when the server is started.
+     * 
+     * @return the server configuration
+     */
+    public ServerConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Sets the configuration used when the server is started. Has no effect
+     * on a server that has already been started.
+     * 
+     * @param configuration
+     *            the server configuration, not {@code null}
+     */
+    protected void setConfiguration(ServerConfiguration configuration) {
+        this.configuration = Objects.requireNonNull(configuration,
+                "Configuration cannot be null");
+    }
+
+    /**
+     * Makes the threads of this server daemon threads even if the
+     * configuration says otherwise. The configuration itself is left
+     * unchanged, as it may be shared with other servers.
+     */
+    void forceDaemonThreads() {
+        daemonThreads = true;
+    }
+
+    /**
+     * Starts the server and waits until it is ready.
      */
     protected void start() {
+        await(startAsync());
+    }
+
+    /**
+     * Starts the server asynchronously. Hostname discovery, the deployments
+     * and binding the listener are run in parallel. Requests arriving before
+     * their deployment is started get a {@code 503 Service Unavailable}
+     * response. If warm-up is enabled, it runs after the server has started.
+     * <p>
+     * The startup tasks run in a bounded thread pool of their own, which is
+     * shut down once the server is ready or has failed to start. Blocking
+     * startup work thus never occupies the common fork-join pool.
+     * 
+     * @return future completed with this server once it is ready
+     * @see #isReady()
+     */
+    protected CompletableFuture<UndertowServer> startAsync() {
+        long start = System.nanoTime();
+        startupTimings.reset();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(contexts.size() + 2, MAX_STARTUP_THREADS), r -> {
+                    Thread thread = new Thread(r, "undertow-startup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        CompletableFuture<UndertowServer> started;
+        try {
+            started = startAsync(start, executor);
+        } catch (RuntimeException | Error e) {
+            executor.shutdown();
+            throw e;
+        }
+        return started.whenComplete((v, e) -> executor.shutdown());
+    }
+
+    private CompletableFuture<UndertowServer> startAsync(long start,
+            ExecutorService executor) {
+        CompletableFuture<Void> hostname = CompletableFuture
+                .runAsync(this::resolveServerAddress, executor);
+        if (contexts.isEmpty()) {
+            return hostname.thenApply(v -> {
+                startupTimings.recordTotal(start);
+                ready = true;
+                return this;
+            });
+        }
+
+        if (path == null) {
+            path = Handlers.path(Handlers.redirect("/")).addPrefixPath("/",
+                    new ResponseCodeHandler(
+                            StatusCodes.SERVICE_UNAVAILABLE));
+            if (configuration.isMetrics()) {
+                requestMetrics = new RequestMetrics();
+                if (configuration.getMetricsPath() != null) {
+                    path.addExactPath(configuration.getMetricsPath(),
+                            new MetricsEndpointHandler(requestMetrics));
+                }
+            }
+            if (configuration.getHealthPath() != null) {
+                path.addExactPath(configuration.getHealthPath(),
+                        new HealthHandler(this, false));
+            }
+            if (configuration.getReadinessPath() != null) {
+                path.addExactPath(configuration.getReadinessPath(),
+                        new HealthHandler(this, true));
+            }
+        }
+        if (configuration.isSessionInspection() && sessionInspector == null) {
+            sessionInspector = new SessionInspector(configuration);
+        }
+        if (configuration.getRequestExecutor() == null
+                && configuration.isVirtualThreads()
+                && virtualThreadExecutor == null) {
+            virtualThreadExecutor = ServerConfiguration
+                    .newVirtualThreadExecutor();
+        }
+        if (configuration.isWebSockets() && webSocketWorker == null) {
+            // Shared by the deployments, which are started in parallel
+            startWebSocketWorker();
+        }
+        CompletableFuture<Void> deployment = CompletableFuture
+                .allOf(contexts.values().stream()
+                        .filter(context -> context.manager == null)
+                        .map(context -> CompletableFuture
+                                .runAsync(() -> deploy(context), executor))
+                        .toArray(CompletableFuture[]::new));
+        CompletableFuture<Void> bind = CompletableFuture.runAsync(this::bind,
+                executor);
+
+        return CompletableFuture.allOf(hostname, deployment, bind)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        stop();
+                    }
+                }).thenApply(v -> {
+                    if (sessionInspector != null
+                            && sessionInspectorName == null) {
+                        // Registered once the port is known
+                        sessionInspectorName = ManagementUtil.register(
+                                sessionInspector, "SessionInspector", port);
+                    }
+                    return v;
+                }).thenCompose(v -> configuration.isWarmUp()
+                        ? CompletableFuture.runAsync(this::warmUp, executor)
+                        : CompletableFuture.completedFuture(v))
+                .thenApply(v -> {
+                    startupTimings.recordTotal(start);
+                    ready = true;
+                    return this;
+                });
+    }
+
+    /**
+     * Drives synthetic load against the deployments until their latency has
+     * settled, and invalidates the sessions created for it. Sessions of
+     * other clients that connected meanwhile are kept.
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS
+                .toNanos(configuration.getWarmUpTimeout());
+        Set<String> sessionIds = new HashSet<>();
+        for (String contextPath : contexts.keySet()) {
+            String url = "http://localhost:" + port + contextPath;
+            if (!WarmUp.run(url, warmUpToken, deadline, sessionIds)) {
+                getLogger().warning("Latency of " + url
+                        + " did not settle during warm-up");
+                break;
+            }
+        }
+        invalidateSessions(sessionIds);
+        startupTimings.record(Phase.WARMUP, start);
+    }
+
+    private void startWebSocketWorker() {
+        OptionMap.Builder options = OptionMap.builder()
+                .set(Options.WORKER_NAME, "websocket")
+                .set(Options.WORKER_IO_THREADS,
+                        configuration.getWebSocketIoThreads())
+                .set(Options.TCP_NODELAY, true);
+        if (daemonThreads) {
+            options.set(Options.THREAD_DAEMON, true);
+        } else if (configuration.getDaemonThreads() != null) {
+            options.set(Options.THREAD_DAEMON,
+                    configuration.getDaemonThreads());
+        }
+        try {
+            webSocketWorker = Xnio.getInstance(Undertow.class.getClassLoader())
+                    .createWorker(options.getMap());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start WebSocket worker", e);
+        }
+        webSocketBuffers = new DefaultByteBufferPool(
+                configuration.isWebSocketDirectBuffers(),
+                configuration.getWebSocketBufferSize());
+    }
+
+    private void resolveServerAddress() {
         if (serverAddress == null) {
+            long start = System.nanoTime();
             // Find out the address where the browser can access the server.
             serverAddress = NetworkUtil.getDeploymentHostname();
+            startupTimings.record(Phase.HOSTNAME, start);
+        }
+    }
+
+    private void bind() {
+        long start = System.nanoTime();
+        if (serverInstance == null) {
+            serverInstance = build();
+        }
+        if (shutdownHandler != null) {
+            // Accept requests again after a previous stop
+            shutdownHandler.start();
+        }
+        if (accessLog != null) {
+            accessLog.start();
+        }
+        serverInstance.start();
+        // Report the bound ports, which are chosen by the OS for ANY_PORT.
+        // Listeners are reported in the order they were added in build().
+        List<ListenerInfo> listeners = serverInstance.getListenerInfo();
+        port = getPort(listeners.get(0));
+        if (listeners.size() > 1) {
+            securePort = getPort(listeners.get(1));
+        }
+        startupTimings.record(Phase.BIND, start);
+
+        if (requestMetrics != null && requestMetricsName == null) {
+            requestMetricsName = ManagementUtil.register(requestMetrics,
+                    "RequestMetrics", port);
+        }
+        if (admission != null && admissionName == null) {
+            admissionName = ManagementUtil.register(admission,
+                    "AdmissionControl", port);
+        }
+    }
+
+    private static int getPort(ListenerInfo listener) {
+        return ((InetSocketAddress) listener.getAddress()).getPort();
+    }
+
+    /**
+     * Waits for the given future to complete, rethrowing any failure
+     * unwrapped.
+     * 
+     * @param future
+     *            the future to wait for
+     * @return the result of the future
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Invalidates all sessions of the deployments. Used for handing a running
+     * server to a new test without leftover state.
+     */
+    protected void resetSessions() {
+        invalidateSessions(null);
+    }
+
+    /**
+     * Invalidates sessions of the deployments.
+     * 
+     * @param sessionIds
+     *            the ids of the sessions to invalidate, or {@code null} to
+     *            invalidate all sessions
+     */
+    private void invalidateSessions(Set<String> sessionIds) {
+        for (Context context : contexts.values()) {
+            if (context.manager == null
+                    || context.manager.getDeployment() == null) {
+                continue;
+            }
+            SessionManager sessionManager = context.manager.getDeployment()
+                    .getSessionManager();
+            for (String sessionId : sessionIds != null ? sessionIds
+                    : sessionManager.getAllSessions()) {
+                Session session = sessionManager.getSession(sessionId);
+                if (session != null) {
+                    session.invalidate(null);
+                }
+            }
         }
-        Optional.ofNullable(serverInstance).ifPresent(e -> e.start());
     }
 
     /**
-     * Stops the server.
+     * Stops the server. If a shutdown timeout has been configured, new
+     * requests are rejected and in-flight requests are given time to
+     * complete before the listeners are closed. The deployments are stopped
+     * and undeployed after that, and their context paths respond with 503
+     * until they are deployed again by a restart.
+     * 
+     * @see ServerConfiguration#setShutdownTimeout(int)
      */
-    protected void stop() {
+    protected synchronized void stop() {
+        ready = false;
+        // The port can be taken by another server as soon as the listener is
+        // closed, so its MBean names must be free by then
+        ManagementUtil.unregister(requestMetricsName);
+        requestMetricsName = null;
+        ManagementUtil.unregister(admissionName);
+        admissionName = null;
+        ManagementUtil.unregister(sessionInspectorName);
+        sessionInspectorName = null;
+        if (shutdownHandler != null && serverInstance != null) {
+            drain();
+        }
         Optional.ofNullable(serverInstance).ifPresent(e -> e.stop());
+        // Writes the entries of the requests completed while draining
+        Optional.ofNullable(accessLog).ifPresent(e -> e.stop());
+        for (Context context : contexts.values()) {
+            undeploy(context.manager);
+            // Deployed again if the server is restarted, until then the
+            // context path is unavailable rather than served by the
+            // undeployed handler
+            context.manager = null;
+            if (path != null) {
+                path.addPrefixPath(context.contextPath,
+                        new ResponseCodeHandler(
+                                StatusCodes.SERVICE_UNAVAILABLE));
+            }
+        }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+            virtualThreadExecutor = null;
+        }
+        if (webSocketWorker != null) {
+            webSocketWorker.shutdown();
+            webSocketWorker = null;
+            webSocketBuffers.close();
+            webSocketBuffers = null;
+        }
+        Optional.ofNullable(sessionInspector).ifPresent(e -> e.stop());
+    }
+
+    private void drain() {
+        shutdownHandler.shutdown();
+        try {
+            if (!shutdownHandler.awaitShutdown(TimeUnit.SECONDS
+                    .toMillis(configuration.getShutdownTimeout()))) {
+                getLogger().warning("Stopping with requests in flight after "
+                        + configuration.getShutdownTimeout() + "s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void undeploy(DeploymentManager manager) {
+        if (manager == null) {
+            return;
+        }
+        DeploymentInfo info = manager.getDeployment().getDeploymentInfo();
+        if (sessionInspector != null) {
+            sessionInspector.removeSessionManager(
+                    manager.getDeployment().getSessionManager());
+        }
+        try {
+            manager.stop();
+        } catch (ServletException e) {
+            getLogger().log(Level.WARNING, "Could not stop deployment", e);
+        }
+        manager.undeploy();
+        container.removeDeployment(info);
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(UndertowServer.class.getSimpleName());
+    }
+
+    /**
+     * Returns whether the server has started and is ready to serve users. A
+     * server configured to warm up becomes ready once the warm-up has
+     * finished.
+     * 
+     * @return {@code true} if the server is ready; {@code false} if not
+     * @see ServerConfiguration#setWarmUp(boolean)
+     */
+    public boolean isReady() {
+        return ready;
     }
 
     /**
-     * Gets the port where the server is running.
+     * Gets the port where the server is running. Before the server has been
+     * started this is the requested port, which may be {@link #ANY_PORT}.
      * 
      * @return the port
      */
@@ -170,9 +1045,197 @@ public class UndertowServer {
         return "http://" + serverAddress + ":" + getPort() + "/";
     }
 
+    /**
+     * Gets the base URL for the deployment at the given context path with a
+     * following slash.
+     * 
+     * @param contextPath
+     *            the context path of the deployment
+     * @return base URL
+     */
+    public String getBaseURL(String contextPath) {
+        String normalized = normalizeContextPath(contextPath);
+        return ROOT.equals(normalized) ? getBaseURL()
+                : getBaseURL() + normalized.substring(1) + "/";
+    }
+
+    /**
+     * Gets the states of the deployments of this server.
+     * 
+     * @return the deployment states keyed by context path
+     */
+    Map<String, String> getDeploymentStates() {
+        Map<String, String> states = new LinkedHashMap<>();
+        contexts.forEach((contextPath, context) -> {
+            DeploymentManager manager = context.manager;
+            states.put(contextPath, manager != null
+                    ? manager.getState().name() : "UNDEPLOYED");
+        });
+        return states;
+    }
+
+    /**
+     * Gets the number of requests being processed by the deployments.
+     * 
+     * @return the active request count
+     */
+    long getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    /**
+     * Gets the number of requests waiting for admission.
+     * 
+     * @return the queued request count, 0 if admission control is not
+     *         enabled
+     */
+    long getQueuedRequests() {
+        return admission != null ? admission.getStatistics().getQueuedRequests()
+                : 0;
+    }
+
+    /**
+     * Gets the context paths of the deployments of this server.
+     * 
+     * @return the context paths in the order the deployments were added
+     */
+    public Set<String> getContextPaths() {
+        return Collections.unmodifiableSet(contexts.keySet());
+    }
+
+    /**
+     * Gets the durations of the startup phases of this server.
+     * 
+     * @return the startup timings
+     */
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
+
+    /**
+     * Gets the request metrics of this server.
+     * 
+     * @return the request metrics, empty if metrics are not enabled or the
+     *         server has not been started
+     * @see ServerConfiguration#setMetrics(boolean)
+     */
+    public Optional<RequestMetrics> getRequestMetrics() {
+        return Optional.ofNullable(requestMetrics);
+    }
+
+    /**
+     * Gets the statistics of the admission control.
+     * 
+     * @return the admission statistics, empty if admission control is not
+     *         enabled or the server has not been started
+     * @see ServerConfiguration#setMaxConcurrentRequests(int)
+     */
+    public Optional<AdmissionStatistics> getAdmissionStatistics() {
+        return Optional.ofNullable(admission)
+                .map(AdmissionHandler::getStatistics);
+    }
+
+    /**
+     * Gets the statistics of the access log.
+     * 
+     * @return the access log statistics, empty if the access log is not
+     *         enabled or the server has not been started
+     * @see ServerConfiguration#setAccessLogDirectory(java.nio.file.Path)
+     */
+    public Optional<AccessLogStatistics> getAccessLogStatistics() {
+        return Optional.ofNullable(accessLog)
+                .map(AsyncAccessLogReceiver::getStatistics);
+    }
+
+    /**
+     * Gets the statistics of the pre-compressed static resource cache,
+     * summed over all deployments.
+     * 
+     * @return the compression statistics, empty if compression is not enabled
+     *         or the server has not been started
+     * @see ServerConfiguration#setCompression(boolean)
+     */
+    public Optional<CompressionStatistics> getCompressionStatistics() {
+        if (!configuration.isCompression()) {
+            return Optional.empty();
+        }
+        return contexts.values().stream().map(c -> c.staticResources)
+                .filter(Objects::nonNull)
+                .map(StaticResourceHandler::getCompressionStatistics)
+                .reduce(CompressionStatistics::add);
+    }
+
+    /**
+     * Gets the statistics of the static resource cache, summed over all
+     * deployments.
+     * 
+     * @return the cache statistics, empty if neither static resource caching
+     *         nor compression is enabled, or the server has not been started
+     * @see ServerConfiguration#setStaticResourceCaching(boolean)
+     */
+    public Optional<ResourceCacheStatistics> getResourceCacheStatistics() {
+        return contexts.values().stream().map(c -> c.staticResources)
+                .filter(Objects::nonNull)
+                .map(StaticResourceHandler::getCacheStatistics)
+                .reduce(ResourceCacheStatistics::add);
+    }
+
+    /**
+     * Gets the statistics of the off-heap session store, summed over all
+     * deployments.
+     * 
+     * @return the session store statistics, empty if off-heap sessions are
+     *         not enabled or the server has not been started
+     * @see ServerConfiguration#setOffHeapSessions(boolean)
+     */
+    public Optional<SessionStoreStatistics> getSessionStoreStatistics() {
+        return contexts.values().stream().map(c -> c.offHeapSessions)
+                .filter(Objects::nonNull)
+                .map(OffHeapSessionManager::getSessionStoreStatistics)
+                .reduce(SessionStoreStatistics::add);
+    }
+
+    /**
+     * Gets the report of the latest session sample.
+     * 
+     * @return the session report, empty if session inspection is not enabled
+     *         or no sample has been taken yet
+     * @see ServerConfiguration#setSessionInspection(boolean)
+     */
+    public Optional<SessionReport> getSessionReport() {
+        return Optional.ofNullable(sessionInspector)
+                .flatMap(SessionInspector::getReport);
+    }
+
+    /**
+     * Gets the port of the HTTPS listener.
+     * 
+     * @return the HTTPS port, or {@code -1} if the server has no started HTTPS
+     *         listener
+     * @see ServerConfiguration#setHttpsPort(int)
+     */
+    public int getSecurePort() {
+        return securePort;
+    }
+
+    /**
+     * Gets the HTTPS base URL for the deployment with a following slash.
+     * 
+     * @return HTTPS base URL
+     * @throws IllegalStateException
+     *             if the server has no started HTTPS listener
+     */
+    public String getSecureBaseURL() {
+        int port = securePort;
+        if (port < 0) {
+            throw new IllegalStateException("No HTTPS listener started");
+        }
+        return "https://" + serverAddress + ":" + port + "/";
+    }
+
     /**
      * Creates a new {@link UndertowServer} for given {@link VaadinServlet}
-     * using random port.
+     * using any free port.
      * 
      * @param servletClass
      *            the servlet to deploy
@@ -180,7 +1243,7 @@ public class UndertowServer {
      */
     protected static UndertowServer withServlet(
             Class<? extends VaadinServlet> servletClass) {
-        return withServlet(servletClass, NetworkUtil.getRandomPort());
+        return withServlet(servletClass, ANY_PORT);
     }
 
     /**
@@ -201,7 +1264,7 @@ public class UndertowServer {
     }
 
     /**
-     * Creates a new {@link UndertowServer} for given {@link UI} using random
+     * Creates a new {@link UndertowServer} for given {@link UI} using any free
      * port.
      * 
      * @param uiClass
@@ -209,7 +1272,7 @@ public class UndertowServer {
      * @return the undertow server
      */
     protected static UndertowServer withUI(Class<? extends UI> uiClass) {
-        return withUI(uiClass, NetworkUtil.getRandomPort());
+        return withUI(uiClass, ANY_PORT);
     }
 
     /**
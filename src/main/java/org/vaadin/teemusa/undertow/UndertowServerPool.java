@@ -0,0 +1,75 @@
+package org.vaadin.teemusa.undertow;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Pool of started servers shared by pooled {@link UndertowRule}s. Each server
+ * is leased to one test at a time and returned with its sessions invalidated.
+ * Pooled servers keep running until the JVM shuts down.
+ */
+class UndertowServerPool {
+
+    private static final ConcurrentHashMap<Object, Queue<UndertowServer>> idle = new ConcurrentHashMap<>();
+    private static final Queue<UndertowServer> started = new ConcurrentLinkedQueue<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                UndertowServerPool::stopAll, "undertow-server-pool-shutdown"));
+    }
+
+    private UndertowServerPool() {
+    }
+
+    /**
+     * Leases an idle server for the given key, or starts a new one if none is
+     * available. A new server is started on its own startup threads, so
+     * acquiring never blocks the calling thread or the common fork-join
+     * pool.
+     * 
+     * @param key
+     *            the key identifying equivalent servers
+     * @param factory
+     *            factory for creating a new server
+     * @return future completed with a started server
+     */
+    static CompletableFuture<UndertowServer> acquireAsync(Object key,
+            Supplier<UndertowServer> factory) {
+        UndertowServer server = getIdle(key).poll();
+        if (server != null) {
+            return CompletableFuture.completedFuture(server);
+        }
+        return factory.get().startAsync().thenApply(s -> {
+            started.add(s);
+            return s;
+        });
+    }
+
+    /**
+     * Resets the sessions of a leased server and makes it available again.
+     * 
+     * @param key
+     *            the key the server was acquired with
+     * @param server
+     *            the server to return
+     */
+    static void release(Object key, UndertowServer server) {
+        server.resetSessions();
+        getIdle(key).offer(server);
+    }
+
+    private static Queue<UndertowServer> getIdle(Object key) {
+        return idle.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+    }
+
+    private static void stopAll() {
+        idle.clear();
+        UndertowServer server;
+        while ((server = started.poll()) != null) {
+            server.stop();
+        }
+    }
+}
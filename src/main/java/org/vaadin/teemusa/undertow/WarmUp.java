@@ -0,0 +1,78 @@
+package org.vaadin.teemusa.undertow;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Warms up a deployment by running short rounds of {@link LoadDriver} load
+ * against it. The latency is considered settled once the mean UIDL latency
+ * of two consecutive rounds differs by less than 10%, at which point servlet
+ * initialization, Vaadin bootstrap and the hot request paths have been
+ * exercised and compiled.
+ * <p>
+ * The requests carry a {@link #HEADER} with a token of the server, which
+ * keeps them out of the request metrics and the access log. Only the
+ * sessions created for the warm-up are invalidated afterwards.
+ * 
+ * @see ServerConfiguration#setWarmUp(boolean)
+ */
+class WarmUp {
+
+    /**
+     * Header marking the synthetic requests of a warm-up.
+     */
+    static final String HEADER = "X-Warm-Up";
+
+    private static final Duration ROUND = Duration.ofSeconds(1);
+    private static final double TOLERANCE = 0.1;
+    private static final int SESSIONS = 20;
+    private static final int CONNECTIONS = 4;
+
+    private WarmUp() {
+    }
+
+    /**
+     * Warms up the deployment at the given URL.
+     * 
+     * @param baseURL
+     *            the loopback URL of the deployment
+     * @param token
+     *            the value of the {@link #HEADER} of the requests
+     * @param deadline
+     *            the {@link System#nanoTime()} to stop at even if the latency
+     *            has not settled
+     * @param sessionIds
+     *            the set to add the ids of the created sessions to
+     * @return {@code true} if the latency settled before the deadline
+     */
+    static boolean run(String baseURL, String token, long deadline,
+            Set<String> sessionIds) {
+        double previous = -1;
+        while (System.nanoTime() - deadline < 0) {
+            LoadReport report = LoadDriver.create(baseURL)
+                    .setSessions(SESSIONS).setConnections(CONNECTIONS)
+                    .setHeader(HEADER, token).run(ROUND);
+            sessionIds.addAll(report.getSessionIds());
+            if (report.getUidlRequests() == 0) {
+                // Not a Vaadin UI that the load driver can click through
+                getLogger().fine("No UIDL requests completed for " + baseURL
+                        + ", skipping warm-up");
+                return true;
+            }
+            double latency = report.getUidlLatency()
+                    .getMean(TimeUnit.MICROSECONDS);
+            if (previous > 0
+                    && Math.abs(latency - previous) < previous * TOLERANCE) {
+                return true;
+            }
+            previous = latency;
+        }
+        return false;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(WarmUp.class.getSimpleName());
+    }
+}
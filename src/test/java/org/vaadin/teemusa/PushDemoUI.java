@@ -0,0 +1,28 @@
+package org.vaadin.teemusa;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.vaadin.annotations.Push;
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.shared.ui.ui.Transport;
+import com.vaadin.ui.Button;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.VerticalLayout;
+
+@Push(transport = Transport.WEBSOCKET)
+public class PushDemoUI extends UI {
+
+    @Override
+    protected void init(VaadinRequest request) {
+        // Without a fallback, nothing is pushed if WebSockets do not work
+        getPushConfiguration().setFallbackTransport(Transport.WEBSOCKET);
+
+        Label status = new Label("Waiting");
+        status.setId("status");
+        setContent(new VerticalLayout(new Button("Push",
+                e -> CompletableFuture.runAsync(
+                        () -> access(() -> status.setValue("Pushed")))),
+                status));
+    }
+}
@@ -0,0 +1,105 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Predicate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.AccessLogStatistics;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+public class AccessLogTest {
+
+    private final Path logDirectory = Paths.get(
+            System.getProperty("java.io.tmpdir"),
+            "access-log-test-" + System.nanoTime());
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setAccessLogDirectory(logDirectory)
+                    .setAccessLogPattern("%m %U %s"));
+
+    private final Path blockedDirectory = Paths.get(
+            System.getProperty("java.io.tmpdir"),
+            "access-log-test-blocked-" + System.nanoTime());
+
+    @Rule
+    public UndertowRule blockedRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setAccessLogDirectory(blockedDirectory)
+                    .setAccessLogPattern("%m %U %s"));
+
+    @Test
+    public void testRequestIsLogged() throws Exception {
+        UndertowServer server = serverRule.getServer();
+        request(server);
+
+        AccessLogStatistics statistics = await(server,
+                s -> s.getWrittenEntries() > 0);
+        assertThat(statistics.getDroppedEntries(), is(0L));
+        assertThat(statistics.getWriteErrors(), is(0L));
+        assertThat(read(logDirectory.resolve("access.log")),
+                containsString("GET / 200"));
+    }
+
+    @Test
+    public void testWriterRecoversFromErrors() throws Exception {
+        UndertowServer server = blockedRule.getServer();
+        // A file in place of the log directory fails every write
+        Files.write(blockedDirectory, new byte[0]);
+        request(server);
+        AccessLogStatistics statistics = await(server,
+                s -> s.getWriteErrors() > 0);
+        assertThat(statistics.getWrittenEntries(), is(0L));
+
+        Files.delete(blockedDirectory);
+        request(server);
+        await(server, s -> s.getWrittenEntries() > 0);
+        assertThat(read(blockedDirectory.resolve("access.log")),
+                containsString("GET / 200"));
+    }
+
+    private static void request(UndertowServer server) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static AccessLogStatistics await(UndertowServer server,
+            Predicate<AccessLogStatistics> condition)
+            throws InterruptedException {
+        // Written by the background thread
+        long deadline = System.currentTimeMillis() + 5000;
+        AccessLogStatistics statistics;
+        do {
+            Thread.sleep(10);
+            statistics = server.getAccessLogStatistics().get();
+        } while (!condition.test(statistics)
+                && System.currentTimeMillis() < deadline);
+        assertThat(statistics.toString(), condition.test(statistics),
+                is(true));
+        return statistics;
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.AdmissionStatistics;
+import org.vaadin.teemusa.undertow.AdmissionStatistics.Limit;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class AdmissionControlTest {
+
+    private static final CountDownLatch requestStarted = new CountDownLatch(
+            1);
+    private static final CountDownLatch release = new CountDownLatch(1);
+
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = false, ui = DemoUI.class)
+    public static class BlockingServlet extends VaadinServlet {
+        @Override
+        protected void service(HttpServletRequest request,
+                HttpServletResponse response)
+                throws ServletException, IOException {
+            if (request.getRequestURI().endsWith("/PUSH")) {
+                // Answered without waiting for a push connection
+                response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+                return;
+            }
+            if (!request.getRequestURI().contains("/HEARTBEAT/")) {
+                requestStarted.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.service(request, response);
+        }
+    }
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule
+            .withServlet(BlockingServlet.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setMaxConcurrentRequests(1).setMaxQueuedRequests(1));
+
+    @Test
+    public void testOverloadIsShed() throws Exception {
+        int port = serverRule.getServer().getPort();
+        CompletableFuture<HttpURLConnection> running = CompletableFuture
+                .supplyAsync(() -> get(port, "/"));
+        assertThat(requestStarted.await(5, TimeUnit.SECONDS), is(true));
+        CompletableFuture<HttpURLConnection> queued = CompletableFuture
+                .supplyAsync(() -> get(port, "/"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (getStatistics().getQueuedRequests(Limit.DEFAULT) == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(getStatistics().getQueuedRequests(Limit.DEFAULT), is(1L));
+
+        HttpURLConnection rejected = get(port, "/");
+        assertThat(rejected.getResponseCode(), is(503));
+        assertThat(rejected.getHeaderField("Retry-After"), is("1"));
+
+        // Heartbeats are admitted through a limit of their own
+        HttpURLConnection heartbeat = get(port, "/HEARTBEAT/?v-uiId=0");
+        assertThat(heartbeat.getResponseCode(), is(not(503)));
+        // Push connections are not limited
+        assertThat(get(port, "/PUSH").getResponseCode(), is(204));
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS).getResponseCode(),
+                is(200));
+        assertThat(queued.get(5, TimeUnit.SECONDS).getResponseCode(),
+                is(200));
+
+        AdmissionStatistics statistics = getStatistics();
+        assertThat(statistics.getRejectedRequests(Limit.DEFAULT), is(1L));
+        assertThat(statistics.getRejectedRequests(Limit.HEARTBEAT), is(0L));
+        assertThat(statistics.getQueuedRequests(), is(0L));
+    }
+
+    private AdmissionStatistics getStatistics() {
+        return serverRule.getServer().getAdmissionStatistics().get();
+    }
+
+    private static HttpURLConnection get(int port, String path) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + port + path).openConnection();
+            // Waits for the response
+            connection.getResponseCode();
+            return connection;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+public class AnyPortTest {
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class);
+
+    @Test
+    public void testBoundPortIsReported() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        assertThat(server.getPort(), is(not(UndertowServer.ANY_PORT)));
+        assertThat(server.getBaseURL(), endsWith(":" + server.getPort() + "/"));
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
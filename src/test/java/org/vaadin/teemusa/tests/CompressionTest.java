@@ -0,0 +1,131 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+public class CompressionTest {
+
+    private static final String STYLES = "VAADIN/themes/valo/styles.css";
+
+    @ClassRule
+    public static UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration().setCompression(true)
+                    .setStaticResourceCaching(true));
+
+    @ClassRule
+    public static UndertowRule thresholdRule = UndertowRule
+            .withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration().setCompression(true)
+                    .setStaticResourceCaching(true)
+                    .setCompressionThreshold(Integer.MAX_VALUE));
+
+    @ClassRule
+    public static UndertowRule mimeTypeRule = UndertowRule
+            .withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration().setCompression(true)
+                    .setStaticResourceCaching(true)
+                    .setCompressibleMimeTypes("application/json"));
+
+    @Test
+    public void testStaticResourceIsCompressed() throws IOException {
+        HttpURLConnection connection = open(serverRule, "gzip");
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+            assertThat(connection.getHeaderField("Content-Encoding"),
+                    is("gzip"));
+            assertThat(connection.getHeaderField("Vary"),
+                    containsString("Accept-Encoding"));
+            try (InputStream in = new GZIPInputStream(
+                    connection.getInputStream())) {
+                assertArrayEquals(readResource(), readFully(in));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testQualityValues() throws IOException {
+        assertThat(getEncoding(serverRule, "deflate"), is("deflate"));
+        assertThat(getEncoding(serverRule, "GZIP;Q=1"), is("gzip"));
+        assertThat(getEncoding(serverRule, "gzip;q=0, deflate"),
+                is("deflate"));
+        assertThat(getEncoding(serverRule, "gzip;q=0.5, deflate;q=0.8"),
+                is("deflate"));
+        assertThat(getEncoding(serverRule, "deflate;q=0.5, gzip"),
+                is("gzip"));
+        assertThat(getEncoding(serverRule, "*"), is("gzip"));
+        assertThat(getEncoding(serverRule, "*;q=0.1, gzip;q=0"),
+                is("deflate"));
+        assertThat(getEncoding(serverRule, "gzip;q=0, deflate;q=0.0"),
+                nullValue());
+        assertThat(getEncoding(serverRule, "*;q=0"), nullValue());
+        assertThat(getEncoding(serverRule, "identity"), nullValue());
+    }
+
+    @Test
+    public void testBelowThresholdIsNotCompressed() throws IOException {
+        assertThat(getEncoding(thresholdRule, "gzip"), nullValue());
+    }
+
+    @Test
+    public void testExcludedMimeTypeIsNotCompressed() throws IOException {
+        assertThat(getEncoding(mimeTypeRule, "gzip"), nullValue());
+    }
+
+    private static String getEncoding(UndertowRule rule,
+            String acceptEncoding) throws IOException {
+        HttpURLConnection connection = open(rule, acceptEncoding);
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+            try (InputStream in = connection.getInputStream()) {
+                readFully(in);
+            }
+            return connection.getHeaderField("Content-Encoding");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(UndertowRule rule,
+            String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + rule.getServer().getPort() + "/"
+                        + STYLES).openConnection();
+        connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        return connection;
+    }
+
+    private static byte[] readResource() throws IOException {
+        try (InputStream in = CompressionTest.class.getClassLoader()
+                .getResourceAsStream(STYLES)) {
+            return readFully(in);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
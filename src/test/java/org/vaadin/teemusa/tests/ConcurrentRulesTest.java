@@ -0,0 +1,87 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+public class ConcurrentRulesTest {
+
+    private static final int RULES = 200;
+
+    @Test
+    public void testRulesStartedConcurrently() throws Exception {
+        // Released when every rule has started, and again when every test
+        // has run, so that all servers are running at the same time
+        CyclicBarrier barrier = new CyclicBarrier(RULES);
+        Set<Integer> ports = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(RULES);
+        try {
+            List<Future<?>> tests = new ArrayList<>();
+            for (int i = 0; i < RULES; i++) {
+                Description description = Description.createTestDescription(
+                        ConcurrentRulesTest.class, "test" + i);
+                tests.add(executor.submit(() -> {
+                    UndertowRule rule = UndertowRule.withUI(DemoUI.class)
+                            .withConfiguration(new ServerConfiguration()
+                                    .setIoThreads(1).setWorkerThreads(2));
+                    Statement statement = rule.apply(new Statement() {
+                        @Override
+                        public void evaluate() throws Throwable {
+                            int port = rule.getServer().getPort();
+                            assertTrue("Port " + port + " used twice",
+                                    ports.add(port));
+                            assertThat(getStatus(port), is(200));
+                            barrier.await(1, TimeUnit.MINUTES);
+                        }
+                    }, description);
+                    barrier.await(1, TimeUnit.MINUTES);
+                    try {
+                        statement.evaluate();
+                    } catch (Exception | Error e) {
+                        throw e;
+                    } catch (Throwable t) {
+                        throw new RuntimeException(t);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> test : tests) {
+                // Rethrows the failure of the test, if any
+                test.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(ports.size(), is(RULES));
+    }
+
+    private static int getStatus(int port) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + port + "/").openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class GracefulShutdownTest {
+
+    private static final CountDownLatch requestStarted = new CountDownLatch(
+            1);
+
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = false, ui = DemoUI.class)
+    public static class SlowServlet extends VaadinServlet {
+        @Override
+        protected void service(HttpServletRequest request,
+                HttpServletResponse response)
+                throws ServletException, IOException {
+            requestStarted.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.service(request, response);
+        }
+    }
+
+    @Test
+    public void testInFlightRequestCompletesOnStop() throws Throwable {
+        UndertowRule serverRule = UndertowRule.withServlet(SlowServlet.class)
+                .withConfiguration(
+                        new ServerConfiguration().setShutdownTimeout(5));
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+
+        // The rule stops the server once the statement returns
+        serverRule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                int port = serverRule.getServer().getPort();
+                CompletableFuture.supplyAsync(() -> getStatus(port))
+                        .whenComplete((s, e) -> {
+                            if (e != null) {
+                                status.completeExceptionally(e);
+                            } else {
+                                status.complete(s);
+                            }
+                        });
+                requestStarted.await(5, TimeUnit.SECONDS);
+            }
+        }, Description.createTestDescription(getClass(), "stop"))
+                .evaluate();
+
+        assertThat(status.get(5, TimeUnit.SECONDS), is(200));
+    }
+
+    private static int getStatus(int port) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + port + "/").openConnection();
+            try {
+                return connection.getResponseCode();
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+public class HealthEndpointTest {
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setHealthPath("/health").setReadinessPath("/ready"));
+
+    @Test
+    public void testEndpointsReportDeployment() throws IOException {
+        for (String path : new String[] { "/health", "/ready" }) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + serverRule.getServer().getPort()
+                            + path).openConnection();
+            try {
+                assertThat(connection.getResponseCode(), is(200));
+                // Probes never reach the servlet, so no session is created
+                assertThat(connection.getHeaderField("Set-Cookie"),
+                        is(nullValue()));
+                try (InputStream in = connection.getInputStream();
+                        Scanner scanner = new Scanner(in, "UTF-8")) {
+                    String body = scanner.useDelimiter("\\A").next();
+                    assertThat(body, containsString("\"status\":\"UP\""));
+                    assertThat(body, containsString("\"/\":\"STARTED\""));
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+}
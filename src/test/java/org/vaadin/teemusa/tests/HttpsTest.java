@@ -0,0 +1,69 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.SelfSignedCertificate;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+public class HttpsTest {
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setHttpsPort(UndertowServer.ANY_PORT)
+                    .setSslSessionCacheSize(1000).setSslSessionTimeout(600));
+
+    @Rule
+    public UndertowRule otherRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setHttpsPort(UndertowServer.ANY_PORT)
+                    .setSslSessionCacheSize(1).setSslSessionTimeout(1));
+
+    @Test
+    public void testHttpsListenerWithSessionCache() throws IOException {
+        assertThat(getStatus(serverRule.getServer()), is(200));
+        assertThat(getStatus(otherRule.getServer()), is(200));
+    }
+
+    @Test
+    public void testSharedContextIsNotTuned()
+            throws GeneralSecurityException {
+        SSLContext defaults = SSLContext.getInstance("TLS");
+        defaults.init(null, null, null);
+        SSLSessionContext expected = defaults.getServerSessionContext();
+
+        SSLSessionContext sessions = SelfSignedCertificate.getSslContext()
+                .getServerSessionContext();
+        assertThat(sessions.getSessionCacheSize(),
+                is(expected.getSessionCacheSize()));
+        assertThat(sessions.getSessionTimeout(),
+                is(expected.getSessionTimeout()));
+    }
+
+    private static int getStatus(UndertowServer server) throws IOException {
+        HttpsURLConnection connection = (HttpsURLConnection) new URL(
+                "https://localhost:" + server.getSecurePort() + "/")
+                        .openConnection();
+        connection.setSSLSocketFactory(SelfSignedCertificate
+                .getClientSslContext().getSocketFactory());
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
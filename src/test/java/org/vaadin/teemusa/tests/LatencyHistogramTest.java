@@ -0,0 +1,81 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.vaadin.teemusa.undertow.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentile(50, TimeUnit.MICROSECONDS),
+                is(0.0));
+        assertThat(histogram.getMean(TimeUnit.MICROSECONDS), is(0.0));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 0; micros < 8; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertThat(histogram.getPercentile(50, TimeUnit.MICROSECONDS),
+                is(3.0));
+        assertThat(histogram.getPercentile(100, TimeUnit.MICROSECONDS),
+                is(7.0));
+    }
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertThat(histogram.getCount(), is(1000L));
+        assertPercentile(histogram, 50, 500);
+        assertPercentile(histogram, 90, 900);
+        assertPercentile(histogram, 99, 990);
+        // Bucket bounds are capped by the largest recorded value
+        assertThat(histogram.getPercentile(100, TimeUnit.MICROSECONDS),
+                is(1000.0));
+        assertThat(histogram.getMax(TimeUnit.MILLISECONDS), is(1.0));
+        assertThat(histogram.getMean(TimeUnit.MICROSECONDS),
+                closeTo(500.5, 0.001));
+        assertThat(histogram.getSum(TimeUnit.MILLISECONDS),
+                closeTo(500.5, 0.001));
+    }
+
+    @Test
+    public void testUnitConversion() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.SECONDS.toNanos(2));
+        assertThat(histogram.getPercentile(50, TimeUnit.SECONDS), is(2.0));
+        // Below a microsecond is recorded as zero
+        histogram.record(999);
+        assertThat(histogram.getPercentile(50, TimeUnit.SECONDS), is(0.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new LatencyHistogram().getPercentile(101, TimeUnit.MICROSECONDS);
+    }
+
+    private static void assertPercentile(LatencyHistogram histogram,
+            double percentile, double exact) {
+        // Upper bound of a bucket that is at most 12.5% wide
+        assertThat(histogram.getPercentile(percentile,
+                TimeUnit.MICROSECONDS),
+                allOf(greaterThanOrEqualTo(exact),
+                        lessThanOrEqualTo(exact * 1.125)));
+    }
+}
@@ -0,0 +1,36 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.LoadDriver;
+import org.vaadin.teemusa.undertow.LoadReport;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+public class LoadDriverTest {
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class);
+
+    @Test
+    public void testButtonClicksInManySessions() {
+        LoadReport report = LoadDriver.create(serverRule.getServer())
+                .setSessions(50).setConnections(4)
+                .run(Duration.ofSeconds(2));
+
+        assertThat(report.toString(), report.getErrors(), is(0L));
+        // Sessions still bootstrapping when the time is up are not counted,
+        // which depends on the speed of the machine
+        assertThat(report.getSessions(),
+                allOf(greaterThan(0L), lessThanOrEqualTo(50L)));
+        assertThat(report.getUidlRequests(), greaterThan(0L));
+    }
+}
@@ -0,0 +1,95 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Scanner;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.RequestMetrics;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+public class MetricsEndpointTest {
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration().setMetrics(true)
+                    .setMetricsPath("/metrics").setHealthPath("/health"));
+
+    @Test
+    public void testFamiliesAreDeclared() throws IOException {
+        String metrics = get("/metrics");
+        assertThat(metrics, containsString(
+                "# TYPE undertow_requests_total counter\n"));
+        assertThat(metrics, containsString(
+                "# TYPE undertow_request_latency_seconds summary\n"));
+
+        Set<String> families = new HashSet<>();
+        String family = null;
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith("# TYPE ")) {
+                family = line.split(" ")[2];
+                // Each family is declared once, with all of its samples
+                assertThat(line, families.add(family), is(true));
+            } else if (!line.startsWith("# HELP ")) {
+                String name = line.split("[{ ]", 2)[0];
+                assertThat(line, name.equals(family)
+                        || name.equals(family + "_sum")
+                        || name.equals(family + "_count"), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testEndpointsAreNotRecorded() throws IOException,
+            InterruptedException {
+        get("/");
+        RequestMetrics metrics = serverRule.getServer().getRequestMetrics()
+                .get();
+        // Recorded once the exchange has completed on the server
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metrics.getRequestCount() == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        get("/health");
+        String scraped = get("/metrics");
+        assertThat(scraped, containsString("\nundertow_requests_total 1\n"));
+        assertThat(scraped, containsString(
+                "undertow_request_latency_seconds_count{type=\"bootstrap\"} "
+                        + "1\n"));
+        // Summaries carry the total latency along with the count
+        assertThat(scraped, containsString(
+                "undertow_request_latency_seconds_sum{type=\"bootstrap\"} "));
+        assertThat(scraped, containsString(
+                "undertow_request_latency_seconds_sum{type=\"push\"} "
+                        + "0.000000\n"));
+        assertThat(metrics.getRequestCount(), is(1L));
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + serverRule.getServer().getPort()
+                        + path).openConnection();
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+            try (InputStream in = connection.getInputStream();
+                    Scanner scanner = new Scanner(in, "UTF-8")) {
+                return scanner.useDelimiter("\\A").next();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
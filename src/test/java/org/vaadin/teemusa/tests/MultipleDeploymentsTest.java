@@ -0,0 +1,100 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class MultipleDeploymentsTest {
+
+    /**
+     * Servlet responding with the value of its greeting init parameter.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class GreetingServlet extends VaadinServlet {
+
+        @Override
+        protected void service(HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            response.getWriter().print(getInitParameter("greeting"));
+        }
+    }
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .addServlet("/servlet", DemoUI.Servlet.class)
+            .addUI("/nested/ui/", DemoUI.class)
+            .addServlet("/hello", GreetingServlet.class,
+                    servlet -> servlet.addInitParam("greeting", "hello"))
+            .addServlet("/hi", GreetingServlet.class,
+                    servlet -> servlet.addInitParam("greeting", "hi"));
+
+    @Test
+    public void testDeploymentsShareListener() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        assertThat(server.getContextPaths(),
+                contains("/", "/servlet", "/nested/ui", "/hello", "/hi"));
+        assertThat(server.getBaseURL("/servlet"), endsWith("/servlet/"));
+
+        for (String contextPath : server.getContextPaths()) {
+            assertThat(getResponseCode(server, contextPath), is(200));
+        }
+    }
+
+    @Test
+    public void testDeploymentsHaveSettingsOfTheirOwn() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        assertThat(getResponse(server, "/hello"), is("hello"));
+        assertThat(getResponse(server, "/hi"), is("hi"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContextPathInUse() {
+        serverRule.addUI("servlet", DemoUI.class);
+    }
+
+    private static String getResponse(UndertowServer server,
+            String contextPath) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + contextPath + "/")
+                        .openConnection();
+        try (Scanner scanner = new Scanner(connection.getInputStream(),
+                "UTF-8")) {
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static int getResponseCode(UndertowServer server,
+            String contextPath) throws IOException {
+        String path = contextPath.equals("/") ? "/" : contextPath + "/";
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + path)
+                        .openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.vaadin.teemusa.PushDemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.SessionStoreStatistics;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+import com.vaadin.testbench.annotations.RunLocally;
+import com.vaadin.testbench.elements.ButtonElement;
+import com.vaadin.testbench.elements.LabelElement;
+import com.vaadin.testbench.parallel.Browser;
+import com.vaadin.testbench.parallel.ParallelTest;
+
+@RunLocally(Browser.PHANTOMJS)
+public class OffHeapPushTest extends ParallelTest {
+
+    @ClassRule
+    public static UndertowRule serverRule = UndertowRule
+            .withUI(PushDemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setOffHeapSessions(true).setSessionPassivationTime(1));
+
+    @Test
+    public void testSessionWithPushConnectionIsNotPassivated()
+            throws InterruptedException {
+        getDriver().get(serverRule.getServer().getBaseURL());
+        assertThat($(LabelElement.class).id("status").getText(),
+                is("Waiting"));
+
+        // Idle for longer than the passivation time and the sweep interval
+        Thread.sleep(3000);
+        SessionStoreStatistics statistics = serverRule.getServer()
+                .getSessionStoreStatistics().get();
+        assertThat(statistics.getSessions(), is(1));
+        assertThat(statistics.getPassivatedSessions(), is(0));
+        assertThat(statistics.getPassivations(), is(0L));
+
+        $(ButtonElement.class).first().click();
+        waitUntil(driver -> "Pushed"
+                .equals($(LabelElement.class).id("status").getText()), 10);
+    }
+}
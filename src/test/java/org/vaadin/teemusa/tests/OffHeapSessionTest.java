@@ -0,0 +1,158 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.SessionStoreStatistics;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class OffHeapSessionTest {
+
+    private static final CountDownLatch IN_REQUEST = new CountDownLatch(1);
+    private static final CountDownLatch RELEASE = new CountDownLatch(1);
+
+    /**
+     * Servlet counting requests in the session. Requests to {@code /slow}
+     * wait for the test between getting the session and using it.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class CountingServlet extends VaadinServlet {
+
+        @Override
+        protected void service(HttpServletRequest request,
+                HttpServletResponse response)
+                throws ServletException, IOException {
+            HttpSession session = request.getSession();
+            if ("/slow".equals(request.getPathInfo())) {
+                IN_REQUEST.countDown();
+                try {
+                    RELEASE.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new ServletException(e);
+                }
+            }
+            Integer count = (Integer) session.getAttribute("count");
+            session.setAttribute("count", count == null ? 1 : count + 1);
+            response.getWriter().print(session.getAttribute("count"));
+        }
+    }
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setOffHeapSessions(true).setSessionPassivationTime(1));
+
+    @Test
+    public void testIdleSessionIsPassivatedAndRestored()
+            throws IOException, InterruptedException {
+        String cookie = request(null);
+
+        SessionStoreStatistics statistics = getStatistics();
+        for (int i = 0; i < 50
+                && statistics.getPassivatedSessions() == 0; i++) {
+            Thread.sleep(100);
+            statistics = getStatistics();
+        }
+        assertThat(statistics.getSessions(), is(1));
+        assertThat(statistics.getPassivatedSessions(), is(1));
+
+        request(cookie);
+        statistics = getStatistics();
+        assertThat(statistics.getPassivatedSessions(), is(0));
+        assertThat(statistics.getActivations(), is(1L));
+        assertThat(statistics.getMemoryUsed(), is(0L));
+    }
+
+    @Test
+    public void testSessionInUseIsNotPassivated() throws Throwable {
+        UndertowRule rule = UndertowRule.withServlet(CountingServlet.class)
+                .withConfiguration(new ServerConfiguration()
+                        .setOffHeapSessions(true)
+                        .setSessionPassivationTime(1));
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                String cookie = request(rule.getServer(), null);
+                CompletableFuture<String> slow = CompletableFuture
+                        .supplyAsync(() -> read(rule.getServer(), cookie));
+                assertThat(IN_REQUEST.await(5, TimeUnit.SECONDS), is(true));
+
+                // Idle for longer than the passivation time and a sweep
+                Thread.sleep(2500);
+                SessionStoreStatistics statistics = rule.getServer()
+                        .getSessionStoreStatistics().get();
+                assertThat(statistics.getPassivations(), is(0L));
+
+                RELEASE.countDown();
+                assertThat(slow.get(5, TimeUnit.SECONDS), is("2"));
+            }
+        }, Description.createTestDescription(OffHeapSessionTest.class,
+                "test")).evaluate();
+    }
+
+    private SessionStoreStatistics getStatistics() {
+        return serverRule.getServer().getSessionStoreStatistics().get();
+    }
+
+    private String request(String cookie) throws IOException {
+        return request(serverRule.getServer(), cookie);
+    }
+
+    private static String read(UndertowServer server, String cookie) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + server.getPort() + "/slow")
+                            .openConnection();
+            connection.setRequestProperty("Cookie", cookie);
+            try (Scanner scanner = new Scanner(connection.getInputStream(),
+                    "UTF-8")) {
+                return scanner.useDelimiter("\\A").next();
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String request(UndertowServer server, String cookie)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+            String setCookie = connection.getHeaderField("Set-Cookie");
+            return setCookie != null ? setCookie.split(";", 2)[0] : cookie;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Scanner;
+import java.util.Set;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class PooledServerTest {
+
+    /**
+     * Servlet telling whether the worker thread serving it is a daemon.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class DaemonServlet extends VaadinServlet {
+
+        @Override
+        protected void service(HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            response.getWriter().print(Thread.currentThread().isDaemon());
+        }
+    }
+
+    private static Set<UndertowServer> usedServers = Collections
+            .newSetFromMap(new IdentityHashMap<>());
+
+    private static final ServerConfiguration configuration =
+            new ServerConfiguration().setDaemonThreads(false);
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.pooledUI(DemoUI.class);
+
+    @Rule
+    public UndertowRule configuredRule = UndertowRule
+            .pooledServlet(DaemonServlet.class)
+            .withConfiguration(configuration);
+
+    @Test
+    public void testFirstMethod() throws IOException {
+        assertBootstrapPage();
+    }
+
+    @Test
+    public void testSecondMethod() throws IOException {
+        assertBootstrapPage();
+    }
+
+    @Test
+    public void testConfiguredServerUsesDaemonThreads() throws IOException {
+        // The pooled server is never stopped, so it must not keep the JVM
+        // alive even if the configuration asks for it
+        UndertowServer server = configuredRule.getServer();
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        try (Scanner scanner = new Scanner(connection.getInputStream(),
+                "UTF-8")) {
+            assertThat(scanner.useDelimiter("\\A").next(), is("true"));
+        } finally {
+            connection.disconnect();
+        }
+        // The configuration may be shared with servers that are stopped
+        assertThat(configuration.getDaemonThreads(), is(false));
+    }
+
+    private void assertBootstrapPage() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        usedServers.add(server);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @AfterClass
+    public static void checkServerReused() {
+        assertThat("Pooled server should be shared between methods.",
+                usedServers.size(), is(1));
+    }
+}
@@ -0,0 +1,34 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.vaadin.teemusa.PushDemoUI;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+import com.vaadin.testbench.annotations.RunLocally;
+import com.vaadin.testbench.elements.ButtonElement;
+import com.vaadin.testbench.elements.LabelElement;
+import com.vaadin.testbench.parallel.Browser;
+import com.vaadin.testbench.parallel.ParallelTest;
+
+@RunLocally(Browser.PHANTOMJS)
+public class PushTest extends ParallelTest {
+
+    @ClassRule
+    public static UndertowRule serverRule = UndertowRule
+            .withUI(PushDemoUI.class);
+
+    @Test
+    public void testUpdatePushedOverWebSocket() {
+        getDriver().get(serverRule.getServer().getBaseURL());
+        assertThat($(LabelElement.class).id("status").getText(),
+                is("Waiting"));
+        $(ButtonElement.class).first().click();
+        // Changed by a background thread after the click has been handled
+        waitUntil(driver -> "Pushed"
+                .equals($(LabelElement.class).id("status").getText()), 10);
+    }
+}
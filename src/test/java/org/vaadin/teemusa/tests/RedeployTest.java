@@ -0,0 +1,193 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class RedeployTest {
+
+    // Public, as the reloaded servlets are in another runtime package
+    public static final List<VaadinServlet> INITIALIZED =
+            new CopyOnWriteArrayList<>();
+    public static final List<VaadinServlet> DESTROYED =
+            new CopyOnWriteArrayList<>();
+    public static volatile boolean failing;
+
+    /**
+     * Servlet recording when it is initialized and destroyed.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class RecordingServlet extends VaadinServlet {
+
+        @Override
+        public void init(ServletConfig servletConfig)
+                throws ServletException {
+            super.init(servletConfig);
+            INITIALIZED.add(this);
+        }
+
+        @Override
+        public void destroy() {
+            DESTROYED.add(this);
+            super.destroy();
+        }
+    }
+
+    /**
+     * Servlet that fails to initialize once the test says so.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class FailingServlet extends VaadinServlet {
+
+        @Override
+        public void init(ServletConfig servletConfig)
+                throws ServletException {
+            if (failing) {
+                throw new ServletException("Failing on purpose");
+            }
+            super.init(servletConfig);
+        }
+    }
+
+    /**
+     * Loads the servlets of this test itself rather than from its parent, like
+     * a classloader of recompiled classes would.
+     */
+    private static class ReloadingClassLoader extends URLClassLoader {
+
+        private ReloadingClassLoader() {
+            super(new URL[] { RedeployTest.class.getProtectionDomain()
+                    .getCodeSource().getLocation() },
+                    RedeployTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.equals(RecordingServlet.class.getName())
+                    && !name.equals(FailingServlet.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                return loaded != null ? loaded : findClass(name);
+            }
+        }
+    }
+
+    // Servlets are initialized on deployment when warming up
+    @Rule
+    public UndertowRule serverRule = UndertowRule
+            .withServlet(RecordingServlet.class)
+            .addServlet("/second", FailingServlet.class)
+            .withConfiguration(new ServerConfiguration().setWarmUp(true)
+                    .setWarmUpTimeout(1));
+
+    @After
+    public void stopFailing() {
+        failing = false;
+    }
+
+    @Test
+    public void testRedeployKeepsListener() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        int port = server.getPort();
+        assertThat(getResponseCode(port), is(200));
+
+        server.redeploy();
+        assertThat(server.getPort(), is(port));
+        assertThat(getResponseCode(port), is(200));
+    }
+
+    @Test
+    public void testRedeployLoadsClassesAgain() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        VaadinServlet previous = getLast(INITIALIZED);
+        int destroyed = DESTROYED.size();
+
+        server.redeploy(new ReloadingClassLoader());
+        assertThat(getResponseCode(server.getPort()), is(200));
+
+        VaadinServlet reloaded = getLast(INITIALIZED);
+        assertThat(reloaded.getClass(),
+                not(sameInstance((Object) RecordingServlet.class)));
+        assertThat(reloaded.getClass().getName(),
+                is(RecordingServlet.class.getName()));
+        assertThat(since(DESTROYED, destroyed), contains(previous));
+    }
+
+    @Test
+    public void testFailedRedeployKeepsDeployments() throws IOException {
+        UndertowServer server = serverRule.getServer();
+        VaadinServlet previous = getLast(INITIALIZED);
+        int initialized = INITIALIZED.size();
+        int destroyed = DESTROYED.size();
+
+        failing = true;
+        try {
+            server.redeploy();
+            fail("Expected the redeployment to fail");
+        } catch (RuntimeException e) {
+            // The deployment at /second could not be started
+        }
+
+        // The new root deployment was started and rolled back
+        assertThat(INITIALIZED, hasSize(initialized + 1));
+        VaadinServlet rolledBack = getLast(INITIALIZED);
+        assertThat(since(DESTROYED, destroyed), contains(rolledBack));
+        assertThat(getResponseCode(server.getPort()), is(200));
+
+        // The previous deployments are still in place
+        failing = false;
+        destroyed = DESTROYED.size();
+        server.redeploy();
+        assertThat(since(DESTROYED, destroyed), contains(previous));
+    }
+
+    private static List<VaadinServlet> since(List<VaadinServlet> servlets,
+            int from) {
+        return servlets.subList(from, servlets.size());
+    }
+
+    private static VaadinServlet getLast(List<VaadinServlet> servlets) {
+        return servlets.get(servlets.size() - 1);
+    }
+
+    private static int getResponseCode(int port) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + port + "/").openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
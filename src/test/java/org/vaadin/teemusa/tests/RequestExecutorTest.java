@@ -0,0 +1,77 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+public class RequestExecutorTest {
+
+    private static final LongAdder EXECUTED = new LongAdder();
+
+    private static final Executor EXECUTOR = task -> {
+        EXECUTED.increment();
+        ForkJoinPool.commonPool().execute(task);
+    };
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(
+                    new ServerConfiguration().setRequestExecutor(EXECUTOR));
+
+    @Test
+    public void testRequestsRunOnExecutor() throws IOException {
+        long before = EXECUTED.sum();
+        assertThat(getResponseCode(serverRule.getServer()), is(200));
+        assertThat(EXECUTED.sum(), greaterThan(before));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testVirtualThreadsUnsupported() {
+        Assume.assumeFalse(ServerConfiguration.isVirtualThreadsSupported());
+        new ServerConfiguration().setVirtualThreads(true);
+    }
+
+    @Test
+    public void testVirtualThreads() throws Throwable {
+        Assume.assumeTrue(ServerConfiguration.isVirtualThreadsSupported());
+        UndertowRule rule = UndertowRule.withUI(DemoUI.class)
+                .withConfiguration(
+                        new ServerConfiguration().setVirtualThreads(true));
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                assertThat(getResponseCode(rule.getServer()), is(200));
+            }
+        }, Description.createTestDescription(
+                RequestExecutorTest.class, "virtualThreads")).evaluate();
+    }
+
+    private static int getResponseCode(UndertowServer server)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/")
+                        .openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowServer;
+import org.xnio.Options;
+import org.xnio.XnioWorker;
+
+import io.undertow.Undertow;
+
+public class ServerConfigurationTest {
+
+    /**
+     * Server exposing the Undertow instance built from its configuration.
+     */
+    private static class BuiltServer extends UndertowServer {
+
+        private BuiltServer(ServerConfiguration configuration) {
+            setConfiguration(configuration);
+        }
+
+        private Undertow buildAndStart() {
+            Undertow undertow = build();
+            undertow.start();
+            return undertow;
+        }
+    }
+
+    @Test
+    public void testThreadsAreConfigured() throws IOException {
+        Undertow undertow = new BuiltServer(new ServerConfiguration()
+                .setIoThreads(3).setWorkerThreads(5).setBufferSize(4096)
+                .setDirectBuffers(false).setBacklog(50).setTcpNoDelay(true)
+                .setDaemonThreads(true)).buildAndStart();
+        try {
+            XnioWorker worker = undertow.getWorker();
+            assertThat(worker.getIoThreadCount(), is(3));
+            assertThat(worker.getOption(Options.WORKER_TASK_MAX_THREADS),
+                    is(5));
+            assertThat(worker.getOption(Options.WORKER_TASK_CORE_THREADS),
+                    is(5));
+        } finally {
+            undertow.stop();
+        }
+    }
+
+    @Test
+    public void testUnsetValuesKeepUndertowDefaults() throws IOException {
+        Undertow undertow = new BuiltServer(new ServerConfiguration())
+                .buildAndStart();
+        try {
+            int ioThreads = Math.max(
+                    Runtime.getRuntime().availableProcessors(), 2);
+            XnioWorker worker = undertow.getWorker();
+            assertThat(worker.getIoThreadCount(), is(ioThreads));
+            assertThat(worker.getOption(Options.WORKER_TASK_MAX_THREADS),
+                    is(ioThreads * 8));
+        } finally {
+            undertow.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThreadCountMustBePositive() {
+        new ServerConfiguration().setWorkerThreads(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeoutCannotBeNegative() {
+        new ServerConfiguration().setShutdownTimeout(-1);
+    }
+}
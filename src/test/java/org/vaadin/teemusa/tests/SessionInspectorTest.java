@@ -0,0 +1,102 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.LoadDriver;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.SessionReport;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.UI;
+
+public class SessionInspectorTest {
+
+    /**
+     * UI whose session expires after two idle seconds.
+     */
+    public static class ExpiringUI extends UI {
+
+        @Override
+        protected void init(VaadinRequest request) {
+            getSession().getSession().setMaxInactiveInterval(2);
+        }
+    }
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setSessionInspection(true)
+                    .setSessionInspectionInterval(1));
+
+    @Test
+    public void testSessionsAreMeasuredPerUIClass()
+            throws InterruptedException {
+        LoadDriver.create(serverRule.getServer()).setSessions(3)
+                .setConnections(1).run(Duration.ofMillis(500));
+        Instant loadDone = Instant.now();
+
+        SessionReport report = null;
+        for (int i = 0; i < 50 && report == null; i++) {
+            Thread.sleep(100);
+            Optional<SessionReport> latest = serverRule.getServer()
+                    .getSessionReport();
+            if (latest.isPresent()
+                    && latest.get().getTime().isAfter(loadDone)) {
+                report = latest.get();
+            }
+        }
+
+        assertThat(report.getSessions(), is(3));
+        assertThat(report.getSampledSessions(), is(3));
+        assertThat(report.getSampledBytes(), greaterThan(0L));
+        assertThat(report.getBytesPerUIClass(),
+                hasKey(DemoUI.class.getName()));
+        assertThat(report.getLargestSessions().size(), is(3));
+    }
+
+    @Test
+    public void testSampledSessionsStillExpire() throws Throwable {
+        // Every session is sampled every second
+        UndertowRule rule = UndertowRule.withUI(ExpiringUI.class)
+                .withConfiguration(new ServerConfiguration()
+                        .setSessionInspection(true)
+                        .setSessionInspectionInterval(1));
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws InterruptedException {
+                LoadDriver.create(rule.getServer()).setSessions(1)
+                        .setConnections(1).run(Duration.ofMillis(200));
+                assertThat(awaitSessions(rule, 1, Duration.ofSeconds(5)),
+                        is(1));
+                assertThat(awaitSessions(rule, 0, Duration.ofSeconds(10)),
+                        is(0));
+            }
+        }, Description.createTestDescription(SessionInspectorTest.class,
+                "test")).evaluate();
+    }
+
+    private static int awaitSessions(UndertowRule rule, int sessions,
+            Duration timeout) throws InterruptedException {
+        Instant deadline = Instant.now().plus(timeout);
+        int latest = -1;
+        while (latest != sessions && Instant.now().isBefore(deadline)) {
+            Thread.sleep(100);
+            latest = rule.getServer().getSessionReport()
+                    .map(SessionReport::getSessions).orElse(-1);
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,159 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.util.Queue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.StartupTimings;
+import org.vaadin.teemusa.undertow.StartupTimings.Phase;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+import com.vaadin.annotations.VaadinServletConfiguration;
+import com.vaadin.server.VaadinServlet;
+
+public class StartupTest {
+
+    private static final CyclicBarrier DEPLOYMENTS = new CyclicBarrier(2);
+    private static final Queue<String> INIT_THREADS =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Servlet whose initialization only completes once another deployment
+     * is being initialized at the same time.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class BarrierServlet extends VaadinServlet {
+
+        @Override
+        public void init(ServletConfig servletConfig)
+                throws ServletException {
+            INIT_THREADS.add(Thread.currentThread().getName());
+            try {
+                DEPLOYMENTS.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException
+                    | TimeoutException e) {
+                throw new ServletException("Deployed alone", e);
+            }
+            super.init(servletConfig);
+        }
+    }
+
+    /**
+     * Servlet whose initialization takes a fixed time.
+     */
+    @WebServlet(value = "/*", asyncSupported = true)
+    @VaadinServletConfiguration(productionMode = true, ui = DemoUI.class)
+    public static class SlowServlet extends VaadinServlet {
+
+        static final long INIT_MILLIS = 300;
+
+        @Override
+        public void init(ServletConfig servletConfig)
+                throws ServletException {
+            try {
+                Thread.sleep(INIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(e);
+            }
+            super.init(servletConfig);
+        }
+    }
+
+    @Test
+    public void testDeploymentsStartInParallel() throws Throwable {
+        // Servlets are initialized on startup when warming up
+        UndertowRule rule = UndertowRule.withServlet(BarrierServlet.class)
+                .addServlet("/second", BarrierServlet.class)
+                .withConfiguration(new ServerConfiguration().setWarmUp(true)
+                        .setWarmUpTimeout(1));
+        evaluate(rule, () -> assertThat(rule.getServer().isReady(),
+                is(true)));
+
+        assertThat(INIT_THREADS, hasSize(2));
+        assertThat(INIT_THREADS, everyItem(startsWith("undertow-startup")));
+        assertStartupThreadsStopped();
+    }
+
+    @Test
+    public void testPhasesOfDeploymentsAddUp() throws Throwable {
+        UndertowRule rule = UndertowRule.withServlet(SlowServlet.class)
+                .addServlet("/second", SlowServlet.class)
+                .withConfiguration(new ServerConfiguration().setWarmUp(true)
+                        .setWarmUpTimeout(1));
+        evaluate(rule, () -> {
+            StartupTimings timings = rule.getServer().getStartupTimings();
+            // Both deployments initialize their servlet when started
+            assertThat(timings.getDuration(Phase.START).get().toMillis(),
+                    greaterThanOrEqualTo(2 * SlowServlet.INIT_MILLIS));
+            assertThat(timings.toString().split("start=").length, is(2));
+        });
+    }
+
+    @Test
+    public void testFailurePropagated() throws Throwable {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            UndertowRule rule = UndertowRule.withUI(DemoUI.class,
+                    socket.getLocalPort());
+            try {
+                evaluate(rule, () -> fail("Started on a port in use"));
+                fail("Expected the server not to start");
+            } catch (RuntimeException e) {
+                assertThat(e.getCause(), instanceOf(BindException.class));
+            }
+            assertThat(rule.getServer().isReady(), is(false));
+        }
+        assertStartupThreadsStopped();
+    }
+
+    private static void evaluate(UndertowRule rule, Runnable test)
+            throws Throwable {
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+                test.run();
+            }
+        }, Description.createTestDescription(StartupTest.class, "test"))
+                .evaluate();
+    }
+
+    private static void assertStartupThreadsStopped()
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hasStartupThreads()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(hasStartupThreads(), is(false));
+    }
+
+    private static boolean hasStartupThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName()
+                        .startsWith("undertow-startup"));
+    }
+}
@@ -0,0 +1,129 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ResourceCacheStatistics;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.UndertowRule;
+
+public class StaticResourceCacheTest {
+
+    private static final String STYLES = "/VAADIN/themes/valo/styles.css";
+    private static final String BOOTSTRAP = "/VAADIN/vaadinBootstrap.js";
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration().setCompression(true)
+                    .setStaticResourceCaching(true));
+
+    // Fits either resource but not both
+    @Rule
+    public UndertowRule smallCacheRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration()
+                    .setStaticResourceCaching(true)
+                    .setStaticResourceCacheSize(Math.max(getSize(STYLES),
+                            getSize(BOOTSTRAP))));
+
+    @Test
+    public void testNotModifiedForEachEncoding() throws IOException {
+        String identity = request(serverRule, STYLES, null, null)
+                .getHeaderField("ETag");
+        String gzip = request(serverRule, STYLES, "gzip", null)
+                .getHeaderField("ETag");
+        assertThat(gzip, not(identity));
+        assertThat(gzip, endsWith("-gzip\""));
+
+        assertThat(request(serverRule, STYLES, null, identity)
+                .getResponseCode(), is(304));
+        assertThat(request(serverRule, STYLES, "gzip", gzip)
+                .getResponseCode(), is(304));
+        // A tag of another representation does not match
+        assertThat(request(serverRule, STYLES, null, gzip)
+                .getResponseCode(), is(200));
+        assertThat(request(serverRule, STYLES, "gzip", identity)
+                .getResponseCode(), is(200));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        request(smallCacheRule, BOOTSTRAP, null, null);
+        request(smallCacheRule, STYLES, null, null);
+        request(smallCacheRule, BOOTSTRAP, null, null);
+
+        ResourceCacheStatistics statistics = getStatistics(smallCacheRule);
+        assertThat(statistics.getMisses(), is(3L));
+        assertThat(statistics.getHits(), is(0L));
+        assertThat(statistics.getEvictions(), is(2L));
+        assertThat(statistics.getEntries(), is(1));
+    }
+
+    @Test
+    public void testParentPathIsNotServed() throws IOException {
+        String classFile = "/org/vaadin/teemusa/DemoUI.class";
+        request(serverRule, "/VAADIN/.." + classFile, null, null);
+        request(serverRule, "/VAADIN/%2e%2e" + classFile, null, null);
+
+        ResourceCacheStatistics statistics = getStatistics(serverRule);
+        assertThat(statistics.getMisses(), is(0L));
+        assertThat(statistics.getEntries(), is(0));
+    }
+
+    private static ResourceCacheStatistics getStatistics(UndertowRule rule) {
+        return rule.getServer().getResourceCacheStatistics().get();
+    }
+
+    private static HttpURLConnection request(UndertowRule rule, String path,
+            String acceptEncoding, String etag) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + rule.getServer().getPort() + path)
+                        .openConnection();
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        try {
+            connection.getResponseCode();
+            if (connection.getErrorStream() == null) {
+                try (InputStream in = connection.getInputStream()) {
+                    readFully(in);
+                }
+            }
+            return connection;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static long getSize(String path) {
+        try (InputStream in = StaticResourceCacheTest.class.getClassLoader()
+                .getResourceAsStream(path.substring(1))) {
+            return readFully(in).length;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.TestUI;
+import org.vaadin.teemusa.undertow.UndertowExtension;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+public class UndertowExtensionTest {
+
+    private static final Set<UndertowServer> servers = ConcurrentHashMap
+            .newKeySet();
+
+    @TestUI(DemoUI.class)
+    @ExtendWith(UndertowExtension.class)
+    static class FirstClass {
+
+        @org.junit.jupiter.api.Test
+        void first(UndertowServer server) throws IOException {
+            record(server);
+        }
+
+        @org.junit.jupiter.api.Test
+        void second(UndertowServer server) throws IOException {
+            record(server);
+        }
+    }
+
+    @TestUI(DemoUI.class)
+    @ExtendWith(UndertowExtension.class)
+    static class SecondClass {
+
+        @org.junit.jupiter.api.Test
+        void first(UndertowServer server) throws IOException {
+            record(server);
+        }
+
+        @org.junit.jupiter.api.Test
+        void second(UndertowServer server) throws IOException {
+            record(server);
+        }
+    }
+
+    @Before
+    public void clearServers() {
+        servers.clear();
+    }
+
+    @Test
+    public void testServerPerMethod() {
+        run("method");
+        assertThat(servers.size(), is(4));
+        assertStopped();
+    }
+
+    @Test
+    public void testServerPerClass() {
+        run("class");
+        assertThat(servers.size(), is(2));
+        assertStopped();
+    }
+
+    @Test
+    public void testServerSharedByClasses() {
+        run("root");
+        assertThat(servers.size(), is(1));
+        assertStopped();
+    }
+
+    private static void run(String scope) {
+        LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder
+                .request()
+                .selectors(selectClass(FirstClass.class),
+                        selectClass(SecondClass.class))
+                .configurationParameter(UndertowExtension.SCOPE_PARAMETER,
+                        scope)
+                // All classes and methods run at the same time
+                .configurationParameter(
+                        "junit.jupiter.execution.parallel.enabled", "true")
+                .configurationParameter(
+                        "junit.jupiter.execution.parallel.mode.default",
+                        "concurrent")
+                .build();
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
+        LauncherFactory.create().execute(request, listener);
+
+        TestExecutionSummary summary = listener.getSummary();
+        StringWriter failures = new StringWriter();
+        summary.printFailuresTo(new PrintWriter(failures));
+        assertThat(failures.toString(), summary.getTestsSucceededCount(),
+                is(4L));
+    }
+
+    private static void record(UndertowServer server) throws IOException {
+        servers.add(server);
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/")
+                        .openConnection();
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void assertStopped() {
+        for (UndertowServer server : servers) {
+            assertThat(server.isReady(), is(false));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.vaadin.teemusa.tests;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.vaadin.teemusa.DemoUI;
+import org.vaadin.teemusa.undertow.ServerConfiguration;
+import org.vaadin.teemusa.undertow.StartupTimings.Phase;
+import org.vaadin.teemusa.undertow.UndertowRule;
+import org.vaadin.teemusa.undertow.UndertowServer;
+
+public class WarmUpTest {
+
+    @Rule
+    public UndertowRule serverRule = UndertowRule.withUI(DemoUI.class)
+            .withConfiguration(new ServerConfiguration().setWarmUp(true)
+                    .setWarmUpTimeout(10));
+
+    @Test
+    public void testReadyAfterWarmUp() {
+        UndertowServer server = serverRule.getServer();
+        assertThat(server.isReady(), is(true));
+        assertThat(server.getStartupTimings().getDuration(Phase.WARMUP)
+                .isPresent(), is(true));
+    }
+
+    @Test
+    public void testSessionCreatedDuringWarmUpSurvives() throws Exception {
+        UndertowRule rule = UndertowRule.withUI(DemoUI.class)
+                .withConfiguration(new ServerConfiguration().setWarmUp(true)
+                        .setWarmUpTimeout(10).setMetrics(true));
+        UndertowServer server = rule.getServer();
+        AtomicReference<String> cookie = new AtomicReference<>();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch sessionCreated = new CountDownLatch(1);
+
+        // Started in the background, so that a user can connect while the
+        // server is warming up
+        CompletableFuture<Void> test = CompletableFuture.runAsync(() -> {
+            try {
+                rule.apply(new Statement() {
+                    @Override
+                    public void evaluate() throws Throwable {
+                        assertThat(sessionCreated.await(1, TimeUnit.MINUTES),
+                                is(true));
+                        requests.incrementAndGet();
+                        // No new session if the old one is still valid
+                        assertThat(request(server, cookie.get()),
+                                nullValue());
+                        // Only the requests of the user are recorded
+                        assertThat(server.getRequestMetrics().get()
+                                .getRequestCount(),
+                                lessThanOrEqualTo((long) requests.get()));
+                    }
+                }, Description.createTestDescription(WarmUpTest.class,
+                        "warmUp")).evaluate();
+            } catch (Throwable t) {
+                throw new RuntimeException(t);
+            }
+        });
+
+        // Wait for the deployment, warm-up takes at least two rounds
+        boolean deployed = false;
+        for (int i = 0; i < 100 && !deployed; i++) {
+            Thread.sleep(50);
+            if (server.getPort() > 0) {
+                requests.incrementAndGet();
+                deployed = getStatus(server) == 200;
+            }
+        }
+        assertThat(deployed, is(true));
+        requests.incrementAndGet();
+        cookie.set(request(server, null));
+        assertThat(cookie.get(), notNullValue());
+        assertThat(server.isReady(), is(false));
+        sessionCreated.countDown();
+        test.get(1, TimeUnit.MINUTES);
+    }
+
+    private static int getStatus(UndertowServer server) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String request(UndertowServer server, String cookie)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + "/").openConnection();
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        try {
+            assertThat(connection.getResponseCode(), is(200));
+            String setCookie = connection.getHeaderField("Set-Cookie");
+            return setCookie != null ? setCookie.split(";", 2)[0] : null;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}